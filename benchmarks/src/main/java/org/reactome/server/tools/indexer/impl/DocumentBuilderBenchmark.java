@@ -0,0 +1,84 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.openjdk.jmh.annotations.*;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the document building steps on synthetic graph objects (see {@link SyntheticGraph}).
+ * Every step writes into a new IndexDocument, which is returned so it is not optimised away.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DocumentBuilderBenchmark {
+
+    private DocumentBuilder documentBuilder;
+    private SyntheticGraph graph;
+    private IndexDocument named;
+
+    @Setup
+    public void setUp() {
+        documentBuilder = new DocumentBuilder(); // loads the controlled vocabulary
+        graph = new SyntheticGraph();
+        named = new IndexDocument();
+        named.setName("Phosphorylation of the TRAF6:IRAK1 complex binding to TAK1");
+    }
+
+    @Benchmark
+    public IndexDocument reaction() {
+        return create(graph.reaction);
+    }
+
+    @Benchmark
+    public IndexDocument ewas() {
+        return create(graph.ewas);
+    }
+
+    @Benchmark
+    public IndexDocument complex() {
+        return create(graph.complex);
+    }
+
+    @Benchmark
+    public IndexDocument regulation() {
+        return create(graph.regulation);
+    }
+
+    @Benchmark
+    public IndexDocument setKeywords() {
+        documentBuilder.setKeywords(named);
+        return named;
+    }
+
+    @Benchmark
+    public IndexDocument setLiteratureReference() {
+        IndexDocument document = new IndexDocument();
+        documentBuilder.setLiteratureReference(document, graph.reaction.getLiteratureReference());
+        return document;
+    }
+
+    @Benchmark
+    public IndexDocument setSummation() {
+        IndexDocument document = new IndexDocument();
+        documentBuilder.setSummation(document, graph.reaction.getSummation());
+        return document;
+    }
+
+    @Benchmark
+    public IndexDocument setFireworksSpecies() {
+        IndexDocument document = new IndexDocument();
+        documentBuilder.setFireworksSpecies(document, graph.reaction, graph.reaction.getSpecies());
+        return document;
+    }
+
+    private IndexDocument create(DatabaseObject databaseObject) {
+        graph.resetNames();
+        return documentBuilder.createSolrDocument(databaseObject);
+    }
+}
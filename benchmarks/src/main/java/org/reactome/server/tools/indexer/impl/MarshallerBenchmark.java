@@ -0,0 +1,68 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the ebeye.xml entry writer. Entries are written to a stream discarding everything,
+ * so only the formatting and escaping are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MarshallerBenchmark {
+
+    private Marshaller marshaller;
+    private List<IndexDocument> documents;
+    private DiscardStream out;
+
+    @Setup
+    public void setUp() {
+        DocumentBuilder documentBuilder = new DocumentBuilder();
+        SyntheticGraph graph = new SyntheticGraph();
+        documents = new ArrayList<>();
+        for (DatabaseObject databaseObject : graph.all()) {
+            graph.resetNames();
+            documents.add(documentBuilder.createSolrDocument(databaseObject));
+        }
+        out = new DiscardStream();
+        marshaller = new Marshaller(out, "Reactome", "Benchmark");
+    }
+
+    /**
+     * Writes the entries of a reaction, an EWAS, a complex and a regulation
+     */
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void writeEntry(Blackhole blackhole) throws IndexerException {
+        for (IndexDocument document : documents) {
+            marshaller.writeEntry(document);
+        }
+        blackhole.consume(out.written);
+    }
+
+    private static class DiscardStream extends OutputStream {
+        long written = 0;
+
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            written += length;
+        }
+    }
+}
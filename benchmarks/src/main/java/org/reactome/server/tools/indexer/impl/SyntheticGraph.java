@@ -0,0 +1,200 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.graph.domain.model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory graph objects shaped like the ones in Reactome: a Reaction with its participants, catalysts and
+ * literature, the EWAS and Complex taking part in it and a Regulation of the Reaction. Nothing is lazy-loaded.
+ * <p>
+ * The DocumentBuilder takes the first name out of the names list (the rest are synonyms), so the names are
+ * restored by {@link #resetNames()} before building a document again.
+ */
+class SyntheticGraph {
+
+    private static final List<String> REACTION_NAMES = Arrays.asList("Phosphorylation of the TRAF6:IRAK1 complex binding to TAK1", "TRAF6 phosphorylation");
+    private static final List<String> EWAS_NAMES = Arrays.asList("p-T209-IRAK1", "Interleukin-1 receptor-associated kinase 1", "IRAK-1");
+    private static final List<String> COMPLEX_NAMES = Arrays.asList("TRAF6:p-IRAK1:TAK1:TAB1:TAB2 complex", "activated TAK1 complex");
+    private static final List<String> REFERENCE_NAMES = Arrays.asList("IRAK1", "Interleukin-1 receptor-associated kinase 1");
+    private static final String SUMMATION = "<p>TRAF6 is an E3 ubiquitin ligase that, together with the <b>UBC13:UEV1A</b> complex, " +
+            "catalyzes the synthesis of K63-linked polyubiquitin chains. The binding of the IRAK1 complex recruits TAK1, " +
+            "which is then activated by <i>autophosphorylation</i> in the kinase activation loop.</p>";
+
+    // Fan-out of the synthetic reaction, close to the average of the curated human reactions
+    private static final int INPUTS = 4;
+    private static final int OUTPUTS = 3;
+    private static final int CATALYSTS = 2;
+    private static final int PUBLICATIONS = 5;
+    private static final int AUTHORS = 6;
+    private static final int COMPONENTS = 5;
+    private static final int CROSS_REFERENCES = 3;
+
+    private long dbIds = 1000000L;
+
+    final Species species;
+    final Reaction reaction;
+    final EntityWithAccessionedSequence ewas;
+    final Complex complex;
+    final PositiveRegulation regulation;
+
+    SyntheticGraph() {
+        species = new Species();
+        species.setDbId(48887L);
+        species.setDisplayName("Homo sapiens");
+        species.setTaxId("9606");
+
+        ReferenceDatabase uniprot = new ReferenceDatabase();
+        uniprot.setDbId(nextDbId());
+        uniprot.setDisplayName("UniProt");
+        uniprot.setAccessUrl("http://purl.uniprot.org/uniprot/###ID###");
+
+        ReferenceGeneProduct referenceEntity = new ReferenceGeneProduct();
+        referenceEntity.setDbId(nextDbId());
+        referenceEntity.setDisplayName("UniProt:P51617 IRAK1");
+        referenceEntity.setIdentifier("P51617");
+        referenceEntity.setReferenceDatabase(uniprot);
+        referenceEntity.setGeneName(Arrays.asList("IRAK1", "IRAK"));
+        referenceEntity.setSecondaryIdentifier(Arrays.asList("IRAK1_HUMAN", "Q8N4F1"));
+        referenceEntity.setCrossReference(crossReferences("ENSEMBL", CROSS_REFERENCES));
+
+        ewas = new EntityWithAccessionedSequence();
+        setCommon(ewas, "R-HSA-450241", "p-T209-IRAK1 [plasma membrane]");
+        ewas.setSpecies(species);
+        ewas.setReferenceEntity(referenceEntity);
+        ewas.setLiteratureReference(publications(2));
+        ewas.setCrossReference(crossReferences("COSMIC", CROSS_REFERENCES));
+
+        complex = new Complex();
+        setCommon(complex, "R-HSA-450270", "TRAF6:p-IRAK1:TAK1:TAB1:TAB2 [plasma membrane]");
+        complex.setSpecies(Arrays.asList(species));
+        List<PhysicalEntity> components = new ArrayList<>();
+        components.add(ewas);
+        for (int i = 1; i < COMPONENTS; i++) components.add(entity("component " + i));
+        complex.setHasComponent(components);
+        complex.setSummation(summations(1));
+
+        reaction = new Reaction();
+        setCommon(reaction, "R-HSA-450294", "Phosphorylation of the TRAF6:IRAK1 complex binding to TAK1");
+        reaction.setSpecies(Arrays.asList(species));
+        List<PhysicalEntity> inputs = new ArrayList<>();
+        inputs.add(complex);
+        for (int i = 1; i < INPUTS; i++) inputs.add(entity("input " + i));
+        reaction.setInput(inputs);
+        List<PhysicalEntity> outputs = new ArrayList<>();
+        for (int i = 0; i < OUTPUTS; i++) outputs.add(entity("output " + i));
+        reaction.setOutput(outputs);
+        List<CatalystActivity> catalysts = new ArrayList<>();
+        for (int i = 0; i < CATALYSTS; i++) catalysts.add(catalyst(i));
+        reaction.setCatalystActivity(catalysts);
+        reaction.setSummation(summations(2));
+        reaction.setLiteratureReference(publications(PUBLICATIONS));
+        reaction.setCrossReference(crossReferences("Rhea", 1));
+
+        regulation = new PositiveRegulation();
+        setCommon(regulation, "R-HSA-450300", "Positive regulation by 'TRAF6 oligomer'");
+        regulation.setRegulatedEntity(reaction);
+        regulation.setRegulator(complex);
+        regulation.setSummation(summations(1));
+
+        resetNames();
+    }
+
+    /**
+     * Restores the names taken by the DocumentBuilder
+     */
+    void resetNames() {
+        reaction.setName(new ArrayList<>(REACTION_NAMES));
+        ewas.setName(new ArrayList<>(EWAS_NAMES));
+        complex.setName(new ArrayList<>(COMPLEX_NAMES));
+        ewas.getReferenceEntity().setName(new ArrayList<>(REFERENCE_NAMES));
+    }
+
+    List<DatabaseObject> all() {
+        return Arrays.asList(reaction, ewas, complex, regulation);
+    }
+
+    private long nextDbId() {
+        return dbIds++;
+    }
+
+    private void setCommon(DatabaseObject databaseObject, String stId, String displayName) {
+        databaseObject.setDbId(nextDbId());
+        databaseObject.setStId(stId);
+        databaseObject.setDisplayName(displayName);
+    }
+
+    private PhysicalEntity entity(String name) {
+        SimpleEntity entity = new SimpleEntity();
+        setCommon(entity, "R-ALL-" + dbIds, name + " [cytosol]");
+        entity.setName(new ArrayList<>(Arrays.asList(name)));
+        return entity;
+    }
+
+    private CatalystActivity catalyst(int i) {
+        GO_MolecularFunction activity = new GO_MolecularFunction();
+        activity.setDbId(nextDbId());
+        activity.setAccession("000467" + i);
+        activity.setDisplayName("protein serine/threonine kinase activity");
+
+        CatalystActivity catalystActivity = new CatalystActivity();
+        catalystActivity.setDbId(nextDbId());
+        catalystActivity.setDisplayName("protein serine/threonine kinase activity of IRAK1 " + i);
+        catalystActivity.setActivity(activity);
+        catalystActivity.setPhysicalEntity(ewas);
+        return catalystActivity;
+    }
+
+    private List<Summation> summations(int count) {
+        List<Summation> summations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Summation summation = new Summation();
+            summation.setDbId(nextDbId());
+            summation.setText(SUMMATION);
+            summations.add(summation);
+        }
+        return summations;
+    }
+
+    private List<Publication> publications(int count) {
+        List<Publication> publications = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LiteratureReference publication = new LiteratureReference();
+            publication.setDbId(nextDbId());
+            publication.setTitle("TRAF6 is a signal transducer for interleukin-1, part " + i);
+            publication.setPubMedIdentifier(8837778 + i);
+            List<Person> authors = new ArrayList<>();
+            for (int j = 0; j < AUTHORS; j++) {
+                Person person = new Person();
+                person.setDbId(nextDbId());
+                person.setDisplayName("Cao, Z " + j);
+                person.setSurname("Cao");
+                person.setFirstname("Zhaodan " + j);
+                authors.add(person);
+            }
+            publication.setAuthor(authors);
+            publications.add(publication);
+        }
+        return publications;
+    }
+
+    private List<DatabaseIdentifier> crossReferences(String databaseName, int count) {
+        ReferenceDatabase referenceDatabase = new ReferenceDatabase();
+        referenceDatabase.setDbId(nextDbId());
+        referenceDatabase.setDisplayName(databaseName);
+
+        List<DatabaseIdentifier> crossReferences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DatabaseIdentifier crossReference = new DatabaseIdentifier();
+            crossReference.setDbId(nextDbId());
+            crossReference.setDatabaseName(databaseName);
+            crossReference.setReferenceDatabase(referenceDatabase);
+            crossReference.setIdentifier("ID" + (dbIds + i));
+            crossReference.setDisplayName(databaseName + ":ID" + (dbIds + i));
+            crossReferences.add(crossReference);
+        }
+        return crossReferences;
+    }
+}
@@ -1,6 +1,7 @@
 package org.reactome.server.tools.indexer;
 
 import com.martiansoftware.jsap.*;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
@@ -8,16 +9,25 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.reactome.server.interactors.database.InteractorsDatabase;
 import org.reactome.server.tools.indexer.config.IndexerNeo4jConfig;
 import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.impl.EbeyeExporter;
+import org.reactome.server.tools.indexer.impl.EmbeddedSolrIndex;
 import org.reactome.server.tools.indexer.impl.Indexer;
+import org.reactome.server.tools.indexer.taxonomy.CachedTaxonomyResolver;
+import org.reactome.server.tools.indexer.taxonomy.EnsemblTaxonomyResolver;
+import org.reactome.server.tools.indexer.taxonomy.NcbiTaxonomyResolver;
+import org.reactome.server.tools.indexer.taxonomy.TaxonomyResolver;
 import org.reactome.server.tools.indexer.util.MailUtil;
 import org.reactome.server.tools.indexer.util.PreemptiveAuthInterceptor;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.sql.SQLException;
@@ -34,6 +44,9 @@ public class Main {
     private static final String DEF_MAIL_DEST = "reactome-developer@reactome.org";
     private static final String DEF_MAIL_SMTP = "smtp.oicr.on.ca";
     private static final String DEF_SOLR_URL = "http://localhost:8983/solr/reactome";
+    private static final String DEF_DEAD_LETTER = "indexer-rejected.jsonl";
+    private static final String DEF_SOLR_CONF = "solr-conf";
+    private static final String STATE_FILE = "indexer-state.json";
     private static final String MAIL_SUBJECT_SUCCESS = "[Search Indexer] The Solr indexer has been created";
     private static final String MAIL_SUBJECT_ERROR = "[SearchIndexer] The Solr indexer has thrown exception";
 
@@ -46,39 +59,211 @@ public class Main {
                         new FlaggedOption("host",       JSAP.STRING_PARSER,     "localhost",        JSAP.NOT_REQUIRED,  'a', "host",        "The neo4j host"),
                         new FlaggedOption("port",       JSAP.STRING_PARSER,     "7474",             JSAP.NOT_REQUIRED,  'b', "port",        "The neo4j port"),
                         new FlaggedOption("user",       JSAP.STRING_PARSER,     "neo4j",            JSAP.NOT_REQUIRED,  'c', "user",        "The neo4j user"),
-                        new FlaggedOption("password",   JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.REQUIRED,      'd', "password",    "The neo4j password"),
+                        new FlaggedOption("password",   JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'd', "password",    "The neo4j password (required unless exporting from Solr)"),
                         new FlaggedOption("solrUrl",    JSAP.STRING_PARSER,     DEF_SOLR_URL,       JSAP.REQUIRED,      'e', "solrUrl",     "Url of the running Solr server"),
                         new FlaggedOption("solrUser",   JSAP.STRING_PARSER,     "admin",            JSAP.NOT_REQUIRED,  'f', "solrUser",    "The Solr user"),
-                        new FlaggedOption("solrPw",     JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.REQUIRED,      'g', "solrPw",      "The Solr password"),
-                        new FlaggedOption("iDbPath",    JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.REQUIRED,      'h', "iDbPath",     "Interactor Database Path"),
+                        new FlaggedOption("solrPw",     JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'g', "solrPw",      "The Solr password (required unless building an embedded index)"),
+                        new FlaggedOption("iDbPath",    JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'h', "iDbPath",     "Interactor Database Path (required unless exporting from Solr)"),
                         new FlaggedOption("mailSmtp",   JSAP.STRING_PARSER,     DEF_MAIL_SMTP,      JSAP.NOT_REQUIRED,  'i', "mailSmtp",    "SMTP Mail host"),
                         new FlaggedOption("mailPort",   JSAP.INTEGER_PARSER,    "25",               JSAP.NOT_REQUIRED,  'j', "mailPort",    "SMTP Mail port"),
                         new FlaggedOption("mailDest",   JSAP.STRING_PARSER,     DEF_MAIL_DEST,      JSAP.NOT_REQUIRED,  'k', "mailDest",    "Mail Destination"),
                         new QualifiedSwitch("xml",      JSAP.BOOLEAN_PARSER,    JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'l', "xml",         "XML output file for the EBeye"),
-                        new QualifiedSwitch("mail",     JSAP.BOOLEAN_PARSER,    JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'm', "mail",        "Activates mail option")
+                        new QualifiedSwitch("mail",     JSAP.BOOLEAN_PARSER,    JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'm', "mail",        "Activates mail option"),
+                        new FlaggedOption("threads",    JSAP.INTEGER_PARSER,    "1",                JSAP.NOT_REQUIRED,  'n', "threads",     "Number of threads building documents in parallel"),
+                        new QualifiedSwitch("projection", JSAP.BOOLEAN_PARSER,  JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'o', "projection",  "Builds documents in batches using Cypher projections instead of lazy-loading"),
+                        new FlaggedOption("solrThreads", JSAP.INTEGER_PARSER,   "2",                JSAP.NOT_REQUIRED,  'p', "solrThreads", "Number of threads sending documents to Solr"),
+                        new QualifiedSwitch("delta",    JSAP.BOOLEAN_PARSER,    JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'q', "delta",       "Only indexes what changed since the previous indexing"),
+                        new FlaggedOption("shadowCore", JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'r', "shadowCore",  "Builds the index in this core and swaps it with the solrUrl core at the end"),
+                        new QualifiedSwitch("resume",   JSAP.BOOLEAN_PARSER,    JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  's', "resume",      "Continues a failed indexing from its last checkpoint"),
+                        new FlaggedOption("taxonomyDump", JSAP.STRING_PARSER,   JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  't', "taxonomyDump", "NCBI taxonomy nodes.dmp (or its folder) used instead of Ensembl to resolve the interactors species"),
+                        new FlaggedOption("taxonomyCache", JSAP.STRING_PARSER,  JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'u', "taxonomyCache", "File keeping the resolved taxonomy lineages between indexings"),
+                        new FlaggedOption("solrBatchMinKb", JSAP.INTEGER_PARSER, "256",            JSAP.NOT_REQUIRED,  'v', "solrBatchMinKb", "Minimum size (KB) of each request adding documents to Solr"),
+                        new FlaggedOption("solrBatchMaxKb", JSAP.INTEGER_PARSER, "8192",           JSAP.NOT_REQUIRED,  'w', "solrBatchMaxKb", "Maximum size (KB) of each request adding documents to Solr"),
+                        new FlaggedOption("deadLetter", JSAP.STRING_PARSER,     DEF_DEAD_LETTER,    JSAP.NOT_REQUIRED,  'x', "deadLetter",  "File where the documents rejected by Solr are written"),
+                        new QualifiedSwitch("xmlGzip",  JSAP.BOOLEAN_PARSER,    JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'y', "xmlGzip",     "Compresses the EBeye XML output file (ebeye.xml.gz)"),
+                        new QualifiedSwitch("xmlFromSolr", JSAP.BOOLEAN_PARSER, JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  'z', "xmlFromSolr", "Only writes the EBeye XML file, reading the documents already in Solr"),
+                        new FlaggedOption("zkHost",     JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "zkHost", "ZooKeeper of a SolrCloud cluster, the collection is the last part of solrUrl"),
+                        new FlaggedOption("embeddedIndex", JSAP.STRING_PARSER,  JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "embeddedIndex", "Builds the index in this local folder with an embedded Solr instead of sending it to solrUrl"),
+                        new FlaggedOption("solrConf",   JSAP.STRING_PARSER,     DEF_SOLR_CONF,      JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "solrConf",    "Solr core configuration (solrconfig.xml and schema.xml) of the embedded index"),
+                        new FlaggedOption("partitions", JSAP.INTEGER_PARSER,    "1",                JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "partitions",  "Number of partitions of the embedded index written in parallel and merged at the end"),
+                        new FlaggedOption("maxSegments", JSAP.INTEGER_PARSER,   JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "maxSegments", "Segments left by the final optimize, 0 not to optimize (1 for an embedded index, 0 otherwise)"),
+                        new FlaggedOption("snapshot",   JSAP.STRING_PARSER,     JSAP.NO_DEFAULT,    JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "snapshot",    "Graph snapshot the documents are built from instead of querying the graph"),
+                        new FlaggedOption("exportSnapshot", JSAP.STRING_PARSER, JSAP.NO_DEFAULT,   JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "exportSnapshot", "Only exports the graph snapshot to this file, nothing is indexed"),
+                        new FlaggedOption("accessionStore", JSAP.STRING_PARSER, JSAP.NO_DEFAULT,   JSAP.NOT_REQUIRED,  JSAP.NO_SHORTFLAG, "accessionStore", "Folder where the interactor accessions are memory-mapped instead of kept in the heap")
                 }
         );
 
         JSAPResult config = jsap.parse(args);
         if (jsap.messagePrinted()) System.exit(1);
 
+        boolean xmlFromSolr = config.getBoolean("xmlFromSolr");
+        String exportSnapshot = config.getString("exportSnapshot");
+        if (exportSnapshot != null) {
+            if (config.getString("password") == null) {
+                System.err.println("The neo4j password (-d) is required to export the graph snapshot.");
+                System.err.println(jsap.getHelp());
+                System.exit(1);
+            }
+            // Only the graph is read, neither Solr nor the interactors database are needed
+            AnnotationConfigApplicationContext ctx = getNeo4jContext(config.getString("host"), config.getString("port"), config.getString("user"), config.getString("password"));
+            try {
+                int entriesCount = ctx.getBean(Indexer.class).exportSnapshot(new File(exportSnapshot));
+                System.out.println("\nGraph snapshot exported with " + entriesCount + " entries.");
+            } catch (IndexerException e) {
+                System.err.println("The graph snapshot could not be exported: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (!xmlFromSolr && (config.getString("password") == null || config.getString("iDbPath") == null)) {
+            System.err.println("The neo4j password (-d) and the interactors database path (-h) are required to index.");
+            System.err.println(jsap.getHelp());
+            System.exit(1);
+        }
+        String snapshot = config.getString("snapshot");
+        if (snapshot != null && config.getBoolean("delta")) {
+            System.err.println("A delta indexing (-q) finds the modified objects in the graph, it cannot be built from a snapshot (--snapshot).");
+            System.exit(1);
+        }
+
         //  Reactome Solr properties for solr connection
-        SolrClient solrClient = getSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"));
+        String solrUrl = config.getString("solrUrl");
+        String shadowCore = config.getString("shadowCore");
+        String solrIndexUrl = solrUrl;
+        if (shadowCore != null) {
+            // solrUrl is <solr base url>/<live core>. The shadow core lives in the same Solr.
+            solrIndexUrl = getSolrBaseUrl(solrUrl) + "/" + shadowCore;
+        }
+        String zkHost = config.getString("zkHost");
+        if (zkHost != null && shadowCore != null) {
+            System.err.println("The shadow core (-r) is swapped through the CoreAdmin API, it cannot be used with a SolrCloud collection (--zkHost).");
+            System.exit(1);
+        }
+        String embeddedIndex = config.getString("embeddedIndex");
+        if (embeddedIndex != null && (zkHost != null || shadowCore != null)) {
+            System.err.println("The embedded index (--embeddedIndex) is built locally, it cannot be used with a shadow core (-r) or a SolrCloud collection (--zkHost).");
+            System.exit(1);
+        }
+        int partitions = config.getInt("partitions");
+        if (partitions > 1 && (embeddedIndex == null || config.getBoolean("delta") || config.getBoolean("resume"))) {
+            // Merged partitions are added to the main core as they are, documents already in it would be duplicated
+            System.err.println("Partitions (--partitions) are only written by a full embedded indexing (--embeddedIndex without -q or -s).");
+            System.exit(1);
+        }
+        if (embeddedIndex == null && config.getString("solrPw") == null) {
+            System.err.println("The Solr password (-g) is required unless building an embedded index (--embeddedIndex).");
+            System.err.println(jsap.getHelp());
+            System.exit(1);
+        }
+        SolrClient solrClient;
+        EmbeddedSolrIndex embeddedSolrIndex = null;
+        if (embeddedIndex != null) {
+            try {
+                embeddedSolrIndex = EmbeddedSolrIndex.open(new File(config.getString("solrConf")), new File(embeddedIndex), xmlFromSolr ? 0 : partitions);
+                solrClient = embeddedSolrIndex.getClient();
+            } catch (IndexerException e) {
+                System.err.println(e.getMessage() + (e.getCause() != null ? ": " + e.getCause().getMessage() : ""));
+                System.exit(1);
+                return;
+            }
+        } else if (zkHost != null) {
+            solrClient = getCloudSolrClient(config.getString("solrUser"), config.getString("solrPw"), zkHost, getSolrCoreName(solrUrl));
+        } else {
+            solrClient = getSolrClient(config.getString("solrUser"), config.getString("solrPw"), solrIndexUrl);
+        }
+
+        // The state of the indexed core is kept next to the embedded index, or in the working directory
+        File stateFile = embeddedIndex != null ? new File(embeddedIndex, STATE_FILE) : new File(STATE_FILE);
+        String stateCore = embeddedIndex != null ? EmbeddedSolrIndex.CORE_NAME : getSolrCoreName(solrUrl);
 
         // Reactome Mail properties
         Boolean mail = config.getBoolean("mail");
         String mailDest = config.getString("mailDest");
         MailUtil mailUtil = new MailUtil(config.getString("mailSmtp"), config.getInt("mailPort"));
 
+        if (xmlFromSolr) {
+            // The live core is exported, the graph database is not needed
+            SolrClient liveClient = zkHost != null || embeddedIndex != null ? solrClient : getSolrClient(config.getString("solrUser"), config.getString("solrPw"), solrUrl);
+            boolean gzip = config.getBoolean("xmlGzip");
+            EbeyeExporter exporter = new EbeyeExporter(liveClient, config.getInt("threads"), stateFile, stateCore);
+            try {
+                int entriesCount = exporter.export(new File(gzip ? "ebeye.xml.gz" : "ebeye.xml"), gzip);
+                if (mail) {
+                    mailUtil.send(FROM, mailDest, MAIL_SUBJECT_SUCCESS, "The ebeye.xml has been exported from Solr with " + entriesCount + " entries");
+                }
+            } catch (IndexerException e) {
+                System.err.println("The ebeye.xml could not be exported: " + e.getMessage());
+                if (mail) {
+                    mailUtil.send(FROM, mailDest, MAIL_SUBJECT_ERROR, "The ebeye.xml could not be exported from Solr.\n\nMessage: " + e.getMessage() + "\nCause: " + e.getCause());
+                }
+                System.exit(1);
+            } finally {
+                // An embedded core has to be shut down for the JVM to exit
+                close(liveClient);
+                if (liveClient != solrClient) close(solrClient);
+            }
+            return;
+        }
+
         // Neo4j
         AnnotationConfigApplicationContext ctx = getNeo4jContext(config.getString("host"), config.getString("port"), config.getString("user"), config.getString("password"));
 
         // Instantiate NewIndexer class as Bean. Spring managed class.
         // Passing arguments using the constructor wasn't working somehow.
         Indexer indexer = ctx.getBean(Indexer.class);
-        indexer.setSolrClient(solrClient);
+        if (embeddedSolrIndex != null) {
+            indexer.setEmbeddedIndex(embeddedSolrIndex);
+        } else if (solrClient instanceof CloudSolrClient) {
+            String solrUser = config.getString("solrUser");
+            String solrPw = config.getString("solrPw");
+            indexer.setSolrCloud((CloudSolrClient) solrClient, url -> getSolrClient(solrUser, solrPw, url));
+        } else {
+            indexer.setSolrClient(solrClient);
+        }
+        if (config.contains("maxSegments")) {
+            indexer.setMaxSegments(config.getInt("maxSegments"));
+        } else if (embeddedIndex != null) {
+            // The index is shipped as it is, a single segment is the fastest to open and search
+            indexer.setMaxSegments(1);
+        }
+        if (shadowCore != null) {
+            SolrClient adminClient = getSolrClient(config.getString("solrUser"), config.getString("solrPw"), getSolrBaseUrl(solrUrl));
+            indexer.setShadowCore(adminClient, getSolrCoreName(solrUrl), shadowCore);
+        }
         indexer.setXml(config.getBoolean("xml")); // ebeye.xml file
+        indexer.setXmlGzip(config.getBoolean("xmlGzip"));
+        indexer.setThreads(config.getInt("threads"));
+        indexer.setProjection(config.getBoolean("projection"));
+        indexer.setSolrThreads(config.getInt("solrThreads"));
+        indexer.setDelta(config.getBoolean("delta"));
+        indexer.setResume(config.getBoolean("resume"));
+        indexer.setSolrBatchBytes(config.getInt("solrBatchMinKb") * 1024, config.getInt("solrBatchMaxKb") * 1024);
+        indexer.setDeadLetterFile(new File(config.getString("deadLetter")));
+        indexer.setStateFile(stateFile, stateCore);
+
+        // Interactors species
+        String taxonomyDump = config.getString("taxonomyDump");
+        TaxonomyResolver taxonomyResolver;
+        if (taxonomyDump != null) {
+            taxonomyResolver = new NcbiTaxonomyResolver(new File(taxonomyDump));
+        } else {
+            System.err.println("WARNING: no NCBI taxonomy dump (-t) given. The species of the interactors are resolved through Ensembl REST API,");
+            System.err.println("         one request per taxon, waiting whenever it is rate limited. Give -t to resolve them locally.");
+            taxonomyResolver = new EnsemblTaxonomyResolver();
+        }
+        String taxonomyCache = config.getString("taxonomyCache");
+        indexer.setTaxonomyResolver(new CachedTaxonomyResolver(taxonomyResolver, taxonomyCache != null ? new File(taxonomyCache) : null));
         indexer.setInteractorsDatabase(new InteractorsDatabase(config.getString("iDbPath")));
+        if (snapshot != null) {
+            try {
+                indexer.setSnapshot(new File(snapshot));
+            } catch (IndexerException e) {
+                System.err.println(e.getMessage() + (e.getCause() != null ? ": " + e.getCause().getMessage() : ""));
+                System.exit(1);
+            }
+        }
+        String accessionStore = config.getString("accessionStore");
+        if (accessionStore != null) indexer.setAccessionStoreFolder(new File(accessionStore));
 
         try {
             int entriesCount = indexer.index();
@@ -122,19 +307,67 @@ public class Main {
      * @return solr connection
      */
     private static SolrClient getSolrClient(String user, String password, String url) {
-
-        if (user != null && !user.isEmpty() && password != null && !password.isEmpty()) {
-            HttpClientBuilder builder = HttpClientBuilder.create().addInterceptorFirst(new PreemptiveAuthInterceptor());
-            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(user, password);
-            credentialsProvider.setCredentials(AuthScope.ANY, credentials);
-            HttpClient client = builder.setDefaultCredentialsProvider(credentialsProvider).build();
+        HttpClient client = getHttpClient(user, password);
+        if (client != null) {
             return new HttpSolrClient.Builder(url).withHttpClient(client).build();
         }
 
         return new HttpSolrClient.Builder(url).build();
     }
 
+    /**
+     * @param zkHost     ZooKeeper ensemble of the SolrCloud cluster e.g. zk1:2181,zk2:2181/solr
+     * @param collection default collection of the client
+     * @return SolrCloud connection
+     */
+    private static CloudSolrClient getCloudSolrClient(String user, String password, String zkHost, String collection) {
+        CloudSolrClient.Builder builder = new CloudSolrClient.Builder().withZkHost(zkHost);
+        HttpClient client = getHttpClient(user, password);
+        if (client != null) builder.withHttpClient(client);
+        CloudSolrClient cloudClient = builder.build();
+        cloudClient.setDefaultCollection(collection);
+        return cloudClient;
+    }
+
+    /**
+     * @return http client authenticating every request, null if there are no credentials
+     */
+    private static HttpClient getHttpClient(String user, String password) {
+        if (user == null || user.isEmpty() || password == null || password.isEmpty()) return null;
+
+        HttpClientBuilder builder = HttpClientBuilder.create().addInterceptorFirst(new PreemptiveAuthInterceptor());
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(user, password);
+        credentialsProvider.setCredentials(AuthScope.ANY, credentials);
+        return builder.setDefaultCredentialsProvider(credentialsProvider).build();
+    }
+
+    private static void close(SolrClient solrClient) {
+        try {
+            solrClient.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the Solr client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param url solr core url e.g. http://localhost:8983/solr/reactome
+     * @return solr base url e.g. http://localhost:8983/solr
+     */
+    private static String getSolrBaseUrl(String url) {
+        String coreUrl = StringUtils.removeEnd(url, "/");
+        return coreUrl.substring(0, coreUrl.lastIndexOf('/'));
+    }
+
+    /**
+     * @param url solr core url e.g. http://localhost:8983/solr/reactome
+     * @return core name e.g. reactome
+     */
+    private static String getSolrCoreName(String url) {
+        String coreUrl = StringUtils.removeEnd(url, "/");
+        return coreUrl.substring(coreUrl.lastIndexOf('/') + 1);
+    }
+
     /**
      * Based on the arguments, set systemProperties and get a Neo4j context that already holds the connection with Neo4j
      *
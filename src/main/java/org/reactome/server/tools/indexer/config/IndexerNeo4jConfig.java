@@ -27,7 +27,10 @@ public class IndexerNeo4jConfig extends Neo4jConfig {
     private static final Logger logger = LoggerFactory.getLogger("importLogger");
 
     private SessionFactory sessionFactory;
-    private Session session;
+
+    // One session per thread. When indexing in parallel every worker gets its own session (and its own
+    // mapping context and transactions) instead of sharing a single, non thread-safe, session.
+    private final ThreadLocal<Session> sessions = new ThreadLocal<>();
 
     @Bean
     public Configuration getConfiguration() {
@@ -53,12 +56,26 @@ public class IndexerNeo4jConfig extends Neo4jConfig {
     @Bean
     @Scope(value = "prototype", proxyMode = ScopedProxyMode.TARGET_CLASS)
     public Session getSession() throws Exception {
+        Session session = sessions.get();
         if (session == null){
-            logger.info("Opening neo4j Session");
+            logger.info("Opening neo4j Session for " + Thread.currentThread().getName());
             session = super.getSession();
+            sessions.set(session);
         }
 
         return session;
     }
 
+    /**
+     * Clears the session of the current thread and forgets it, so a worker about to finish does not keep its
+     * session (and its mapping context) alive. The thread gets a new session if it queries the graph again.
+     */
+    public void releaseSession() {
+        Session session = sessions.get();
+        if (session != null) {
+            session.clear();
+            sessions.remove();
+        }
+    }
+
 }
@@ -0,0 +1,53 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.model.ReactomeSummary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Sorted, read-only, set of interactor accessions and, optionally, the Reactome summary of each one.
+ * <p>
+ * The stores are kept in the heap by default. Given a folder, they are written there and memory-mapped instead,
+ * so the interactors of big IntAct releases do not have to fit in the heap next to the OGM caches.
+ */
+interface AccessionStore extends Closeable {
+
+    int size();
+
+    /**
+     * @param index between 0 and size() - 1
+     * @return the accession at the given position of the sorted accessions
+     */
+    String getAccession(int index);
+
+    boolean contains(String accession);
+
+    /**
+     * @return summary of the accession, null if it is not in the store or was added without summary
+     */
+    ReactomeSummary get(String accession);
+
+    /**
+     * Adds the accessions, in ascending order, and builds the store
+     */
+    interface Builder {
+
+        /**
+         * @param accession greater than the previous one
+         * @param summary   may be null
+         */
+        void add(String accession, ReactomeSummary summary) throws IOException;
+
+        AccessionStore build() throws IOException;
+    }
+
+    /**
+     * @param folder where the store is memory-mapped, null to keep it in the heap
+     * @param name   of the store file in the folder
+     */
+    static Builder builder(File folder, String name) throws IOException {
+        return folder == null ? new HeapAccessionStore.Builder() : new MappedAccessionStore.Builder(new File(folder, name));
+    }
+}
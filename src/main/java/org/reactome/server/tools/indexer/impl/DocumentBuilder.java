@@ -3,13 +3,13 @@ package org.reactome.server.tools.indexer.impl;
 import org.apache.commons.lang3.StringUtils;
 import org.neo4j.ogm.exception.MappingException;
 import org.reactome.server.graph.domain.model.*;
-import org.reactome.server.graph.exception.CustomQueryException;
 import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
 import org.reactome.server.graph.service.DatabaseObjectService;
 import org.reactome.server.tools.indexer.model.CrossReference;
 import org.reactome.server.tools.indexer.model.IndexDocument;
-import org.reactome.server.tools.indexer.model.SpeciesResult;
 import org.reactome.server.tools.indexer.util.IndexerMapSet;
+import org.reactome.server.tools.indexer.util.KeywordMatcher;
+import org.reactome.server.tools.indexer.util.ValuePool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,9 +19,9 @@ import org.springframework.transaction.annotation.Transactional;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 
 import javax.management.RuntimeErrorException;
@@ -34,29 +34,49 @@ class DocumentBuilder {
     private static final Logger logger = LoggerFactory.getLogger("importLogger");
 
     private static final String CONTROLLED_VOCABULARY = "controlledVocabulary.csv";
+    private static final int VALUE_POOL_SIZE = 1 << 14;
 
     private DatabaseObjectService databaseObjectService;
     private AdvancedDatabaseObjectService advancedDatabaseObjectService;
 
-    private Map<Long, Set<String>> simpleEntitiesSpecies = null;
+    // Loaded in the background, only SimpleEntity documents wait for it
+    private volatile FutureTask<SimpleEntitySpecies> simpleEntitiesSpecies = null;
 
-    private List<String> keywords;
+    // How to get the species of each concrete class, resolved the first time the class is seen
+    private static final ClassValue<SpeciesAccessor> SPECIES = new ClassValue<SpeciesAccessor>() {
+        @Override
+        protected SpeciesAccessor computeValue(Class<?> type) {
+            return speciesAccessor(type);
+        }
+    };
+
+    private interface SpeciesAccessor {
+        /**
+         * @return the species of the object, null if it has none
+         */
+        Collection<? extends Taxon> getSpecies(DatabaseObject databaseObject);
+    }
+
+    // Values repeated across documents (species, compartments, types...) are shared by all of them
+    private final ValuePool values = new ValuePool(VALUE_POOL_SIZE);
+
+    // Controlled vocabulary matched in a single pass per text
+    private KeywordMatcher keywords;
 
     public DocumentBuilder() {
-        keywords = loadFile(CONTROLLED_VOCABULARY);
-        if (keywords == null) {
+        List<String> vocabulary = loadFile(CONTROLLED_VOCABULARY);
+        if (vocabulary == null) {
             logger.error("No keywords available");
+        } else {
+            keywords = new KeywordMatcher(vocabulary);
         }
     }
 
     @Transactional
     IndexDocument createSolrDocument(Long dbId) {
 
-        if (simpleEntitiesSpecies == null) {
-            cacheSimpleEntitySpecies();
-        }
+        cacheSimpleEntitySpecies();
 
-        IndexDocument document = new IndexDocument();
         /*
          * Query the Graph and load only Primitives and no Relations attributes.
          * Lazy-loading will load them on demand.
@@ -74,13 +94,23 @@ class DocumentBuilder {
             logger.error("Database object not found - id: " + dbId);
             return null;
         }
+        return createSolrDocument(databaseObject);
+    }
+
+    /**
+     * Creates the document of an already loaded object. Relations are lazy-loaded when the object comes from the
+     * graph, hence this has to be invoked within the same transaction.
+     */
+    IndexDocument createSolrDocument(DatabaseObject databaseObject) {
+        IndexDocument document = new IndexDocument();
         document.setDbId(databaseObject.getDbId().toString());
         document.setStId(databaseObject.getStId());
         document.setOldStId(databaseObject.getOldStId());
 
-        document.setType(getType(databaseObject));
-        document.setExactType(databaseObject.getSchemaClass());
+        document.setType(values.canonical(getType(databaseObject.getClass())));
+        document.setExactType(values.canonical(databaseObject.getSchemaClass()));
 
+        Collection<? extends Taxon> species = null;
         if (databaseObject instanceof PhysicalEntity) {
             PhysicalEntity physicalEntity = (PhysicalEntity) databaseObject;
 
@@ -91,7 +121,7 @@ class DocumentBuilder {
             setDiseases(document, physicalEntity.getDisease());
             setCompartment(document, physicalEntity.getCompartment());
             setCrossReference(document, physicalEntity.getCrossReference());
-            setSpecies(document, physicalEntity);
+            species = setSpecies(document, physicalEntity);
 
             // SPECIFIC FOR PHYSICAL ENTITIES
             setGoTerms(document, physicalEntity.getGoCellularComponent());
@@ -107,7 +137,7 @@ class DocumentBuilder {
             setDiseases(document, event.getDisease());
             setCompartment(document, event.getCompartment());
             setCrossReference(document, event.getCrossReference());
-            setSpecies(document, event);
+            species = setSpecies(document, event);
             setAuthorAndReviewed(document, event);
 
             // SPECIFIC FOR EVENT
@@ -124,7 +154,7 @@ class DocumentBuilder {
             setNameAndSynonyms(document, regulation, regulation.getName());
             setLiteratureReference(document, regulation.getLiteratureReference());
             setSummation(document, regulation.getSummation());
-            setSpecies(document, regulation);
+            species = setSpecies(document, regulation);
 
             // SPECIFIC FOR REGULATIONS
             setRegulatedEntity(document, regulation.getRegulatedEntity());
@@ -132,7 +162,7 @@ class DocumentBuilder {
 
         }
 
-        setFireworksSpecies(document, databaseObject);
+        setFireworksSpecies(document, databaseObject, species);
 
         // Keyword uses the document.getName. Name is set in the document by calling setNameAndSynonyms
         setKeywords(document);
@@ -140,50 +170,54 @@ class DocumentBuilder {
         return document;
     }
 
+    /**
+     * Starts loading the SimpleEntity species, if it has not been started yet, without waiting for it
+     */
     private void cacheSimpleEntitySpecies() {
-        logger.info("Caching SimpleEntity Species");
-        String query = "MATCH (n:SimpleEntity)<-[:regulatedBy|regulator|physicalEntity|entityFunctionalStatus|catalystActivity|hasMember|hasCandidate|hasComponent|repeatedUnit|input|output*]-(:ReactionLikeEvent)-[:species]->(s:Species) " +
-                       "WITH n, COLLECT(DISTINCT s.displayName) AS species " +
-                       "RETURN n.dbId AS dbId, species";
-        try {
-            Collection<SpeciesResult> speciesResultList = advancedDatabaseObjectService.customQueryForObjects(SpeciesResult.class, query, null);
-            simpleEntitiesSpecies = new HashMap<>(speciesResultList.size());
-            for (SpeciesResult speciesResult : speciesResultList) {
-                simpleEntitiesSpecies.put(speciesResult.getDbId(), new HashSet<>(speciesResult.getSpecies()));
-            }
-        } catch (CustomQueryException e) {
-            logger.error("Could not cache fireworks species");
+        if (simpleEntitiesSpecies != null) return;
+        synchronized (this) {
+            // Several workers may ask for the cache at the same time, only the first one loads it
+            if (simpleEntitiesSpecies != null) return;
+            FutureTask<SimpleEntitySpecies> task = new FutureTask<>(() -> SimpleEntitySpecies.load(advancedDatabaseObjectService));
+            Thread thread = new Thread(task, "simple-entity-species");
+            thread.setDaemon(true);
+            thread.start();
+            simpleEntitiesSpecies = task;
         }
+    }
 
-        logger.info("Caching SimpleEntity Species is done");
+    /**
+     * @return species of the SimpleEntity taken from the reactions it takes part in, null if there are none
+     */
+    Set<String> getSimpleEntitySpecies(Long dbId) {
+        cacheSimpleEntitySpecies();
+        try {
+            return simpleEntitiesSpecies.get().get(dbId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the SimpleEntity species", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not cache the SimpleEntity species", e.getCause());
+        }
     }
 
-    private void setFireworksSpecies(IndexDocument document, DatabaseObject databaseObject) {
-        Set<String> fireworksSpecies = new HashSet<>();
-        if ((databaseObject instanceof SimpleEntity)) {
-            fireworksSpecies = simpleEntitiesSpecies.get(databaseObject.getDbId());
-        } else {
-            try {
-                Method getSpecies = databaseObject.getClass().getMethod("getSpecies");
-                Object species = getSpecies.invoke(databaseObject);
-                // some cases like DefinedSet it has species as an attribute but it does not have value in it.
-                if (species != null) {
-                    if (species instanceof Collection) {
-                        //noinspection Convert2streamapi,unchecked
-                        for (Taxon t : (Collection<? extends Taxon>) species) {
-                            fireworksSpecies.add(t.getDisplayName());
-                        }
-                    } else {
-                        Taxon t = (Taxon) species;
-                        fireworksSpecies.add(t.getDisplayName());
-                    }
-                }
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-                //Nothing here
+    /**
+     * @param species the species of the object, as returned by {@link #setSpecies(IndexDocument, DatabaseObject)}
+     */
+    void setFireworksSpecies(IndexDocument document, DatabaseObject databaseObject, Collection<? extends Taxon> species) {
+        Set<String> fireworksSpecies = null;
+        if (databaseObject instanceof SimpleEntity) {
+            // SimpleEntities are not species specific, they are shown in the species of their reactions
+            fireworksSpecies = getSimpleEntitySpecies(databaseObject.getDbId());
+        } else if (species != null) {
+            // some cases like DefinedSet it has species as an attribute but it does not have value in it.
+            fireworksSpecies = new HashSet<>(species.size());
+            for (Taxon t : species) {
+                fireworksSpecies.add(values.canonical(t.getDisplayName()));
             }
         }
 
-        document.setFireworksSpecies(fireworksSpecies.isEmpty() ? null : fireworksSpecies);
+        document.setFireworksSpecies(fireworksSpecies == null || fireworksSpecies.isEmpty() ? null : fireworksSpecies);
     }
 
     private void setNameAndSynonyms(IndexDocument document, DatabaseObject databaseObject, List<String> name) {
@@ -227,7 +261,7 @@ class DocumentBuilder {
      * @param document            is the SolR document.
      * @param literatureReference is the list of Publication
      */
-    private void setLiteratureReference(IndexDocument document, List<Publication> literatureReference) {
+    void setLiteratureReference(IndexDocument document, List<Publication> literatureReference) {
         if (literatureReference == null) return;
 
         IndexerMapSet<String, String> mapSet = new IndexerMapSet<>();
@@ -259,7 +293,7 @@ class DocumentBuilder {
         document.setLiteratureReferenceAuthor(mapSet.getElements("author").stream().map(i -> i.split("#")[1]).collect(Collectors.toList()));
     }
 
-    private void setSummation(IndexDocument document, List<Summation> summations) {
+    void setSummation(IndexDocument document, List<Summation> summations) {
         if (summations == null) return;
 
         String summationText = "";
@@ -273,6 +307,10 @@ class DocumentBuilder {
             }
         }
 
+        setSummation(document, summationText);
+    }
+
+    static void setSummation(IndexDocument document, String summationText) {
         if (!summationText.contains("computationally inferred")) {
             document.setSummation(summationText);
         } else {
@@ -299,8 +337,8 @@ class DocumentBuilder {
     private void setCompartment(IndexDocument document, List<? extends Compartment> compartments) {
         if (compartments == null || compartments.isEmpty()) return;
 
-        document.setCompartmentName(compartments.stream().map(DatabaseObject::getDisplayName).collect(Collectors.toList()));
-        document.setCompartmentAccession(compartments.stream().map(Compartment::getAccession).collect(Collectors.toList()));
+        document.setCompartmentName(compartments.stream().map(c -> values.canonical(c.getDisplayName())).collect(Collectors.toList()));
+        document.setCompartmentAccession(compartments.stream().map(c -> values.canonical(c.getAccession())).collect(Collectors.toList()));
     }
 
     private void setCrossReference(IndexDocument document, List<DatabaseIdentifier> crossReferences) {
@@ -317,7 +355,7 @@ class DocumentBuilder {
 
             CrossReference crossReference = new CrossReference();
             crossReference.setId(databaseIdentifier.getIdentifier());
-            crossReference.setDbName(databaseIdentifier.getDatabaseName());
+            crossReference.setDbName(values.canonical(databaseIdentifier.getDatabaseName()));
             allXRefs.add(crossReference);
         }
 
@@ -331,64 +369,76 @@ class DocumentBuilder {
 
         if (goTerm instanceof GO_BiologicalProcess) {
             GO_BiologicalProcess gbp = (GO_BiologicalProcess) goTerm;
-            document.setGoBiologicalProcessAccessions(Arrays.asList("go:".concat(gbp.getAccession()), gbp.getAccession()));
-            document.setGoBiologicalProcessName(gbp.getDisplayName());
+            document.setGoBiologicalProcessAccessions(Arrays.asList(values.canonical("go:".concat(gbp.getAccession())), values.canonical(gbp.getAccession())));
+            document.setGoBiologicalProcessName(values.canonical(gbp.getDisplayName()));
         } else if (goTerm instanceof GO_CellularComponent) {
             GO_CellularComponent gcc = (GO_CellularComponent) goTerm;
-            document.setGoCellularComponentAccessions(Arrays.asList("go:".concat(gcc.getAccession()), gcc.getAccession()));
-            document.setGoCellularComponentName(gcc.getDisplayName());
+            document.setGoCellularComponentAccessions(Arrays.asList(values.canonical("go:".concat(gcc.getAccession())), values.canonical(gcc.getAccession())));
+            document.setGoCellularComponentName(values.canonical(gcc.getDisplayName()));
         } else if (goTerm instanceof GO_MolecularFunction) {
             GO_MolecularFunction gmf = (GO_MolecularFunction) goTerm;
-            document.addGoMolecularFunctionName(gmf.getDisplayName());
-            document.addGoMolecularFunctionAccession("go:".concat(gmf.getAccession()));
-            document.addGoMolecularFunctionAccession(gmf.getAccession());
+            document.addGoMolecularFunctionName(values.canonical(gmf.getDisplayName()));
+            document.addGoMolecularFunctionAccession(values.canonical("go:".concat(gmf.getAccession())));
+            document.addGoMolecularFunctionAccession(values.canonical(gmf.getAccession()));
         }
     }
 
-    private void setSpecies(IndexDocument document, DatabaseObject databaseObject) {
-        Collection<? extends Taxon> speciesCollection = null;
-        if (databaseObject instanceof GenomeEncodedEntity) {
-            GenomeEncodedEntity genomeEncodedEntity = (GenomeEncodedEntity) databaseObject;
-            if (genomeEncodedEntity.getSpecies() != null) {
-                speciesCollection = Collections.singletonList(genomeEncodedEntity.getSpecies());
-            }
-        } else if (databaseObject instanceof EntitySet) {
-            EntitySet entitySet = (EntitySet) databaseObject;
-            speciesCollection = entitySet.getSpecies();
-            if (entitySet.getRelatedSpecies() != null && !entitySet.getRelatedSpecies().isEmpty()) {
-                document.setRelatedSpecies(entitySet.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList()));
-            }
+    /**
+     * @return the species of the object, null if it has none
+     */
+    Collection<? extends Taxon> setSpecies(IndexDocument document, DatabaseObject databaseObject) {
+        Collection<? extends Taxon> speciesCollection = SPECIES.get(databaseObject.getClass()).getSpecies(databaseObject);
+
+        List<Species> relatedSpecies = null;
+        if (databaseObject instanceof EntitySet) {
+            relatedSpecies = ((EntitySet) databaseObject).getRelatedSpecies();
         } else if (databaseObject instanceof Complex) {
-            Complex complex = (Complex) databaseObject;
-            speciesCollection = complex.getSpecies();
-            if (complex.getRelatedSpecies() != null && !complex.getRelatedSpecies().isEmpty()) {
-                document.setRelatedSpecies(complex.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList()));
-            }
-        } else if (databaseObject instanceof SimpleEntity) {
-            SimpleEntity simpleEntity = (SimpleEntity) databaseObject;
-            if (simpleEntity.getSpecies() != null) {
-                speciesCollection = Collections.singletonList(simpleEntity.getSpecies());
-            }
-        } else if (databaseObject instanceof Polymer) {
-            Polymer polymer = (Polymer) databaseObject;
-            speciesCollection = polymer.getSpecies();
+            relatedSpecies = ((Complex) databaseObject).getRelatedSpecies();
         } else if (databaseObject instanceof Event) {
-            Event event = (Event) databaseObject;
-            speciesCollection = event.getSpecies();
-            if (event.getRelatedSpecies() != null && !event.getRelatedSpecies().isEmpty()) {
-                document.setRelatedSpecies(event.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList()));
-            }
+            relatedSpecies = ((Event) databaseObject).getRelatedSpecies();
+        }
+        if (relatedSpecies != null && !relatedSpecies.isEmpty()) {
+            document.setRelatedSpecies(relatedSpecies.stream().map(s -> values.canonical(s.getDisplayName())).collect(Collectors.toList()));
         }
 
         if (speciesCollection == null || speciesCollection.isEmpty()) {
             document.setSpecies(Collections.singletonList("Entries without species"));
-            return;
+            return null;
         }
 
-        List<String> allSpecies = speciesCollection.stream().map(Taxon::getDisplayName).collect(Collectors.toList());
+        List<String> allSpecies = new ArrayList<>(speciesCollection.size());
+        List<String> taxIds = new ArrayList<>(speciesCollection.size());
+        for (Taxon taxon : speciesCollection) {
+            allSpecies.add(values.canonical(taxon.getDisplayName()));
+            taxIds.add(values.canonical(taxon.getTaxId()));
+        }
         document.setSpecies(allSpecies);
+        document.setTaxId(taxIds);
+        return speciesCollection;
+    }
+
+    /**
+     * Explicit type switch over the classes having species in the graph model. Other classes have none.
+     */
+    private static SpeciesAccessor speciesAccessor(Class<?> type) {
+        if (GenomeEncodedEntity.class.isAssignableFrom(type)) {
+            return o -> singleton(((GenomeEncodedEntity) o).getSpecies());
+        } else if (EntitySet.class.isAssignableFrom(type)) {
+            return o -> ((EntitySet) o).getSpecies();
+        } else if (Complex.class.isAssignableFrom(type)) {
+            return o -> ((Complex) o).getSpecies();
+        } else if (SimpleEntity.class.isAssignableFrom(type)) {
+            return o -> singleton(((SimpleEntity) o).getSpecies());
+        } else if (Polymer.class.isAssignableFrom(type)) {
+            return o -> ((Polymer) o).getSpecies();
+        } else if (Event.class.isAssignableFrom(type)) {
+            return o -> ((Event) o).getSpecies();
+        }
+        return o -> null;
+    }
 
-        document.setTaxId(speciesCollection.stream().map(Taxon::getTaxId).collect(Collectors.toList()));
+    private static Collection<? extends Taxon> singleton(Taxon taxon) {
+        return taxon == null ? null : Collections.singletonList(taxon);
     }
 
     private void setReferenceEntity(IndexDocument document, DatabaseObject databaseObject) {
@@ -426,8 +476,8 @@ class DocumentBuilder {
             }
 
             // Setting TYPE and EXACT TYPE for the given PhysicalEntity
-            document.setType(getReferenceTypes(referenceEntity));
-            document.setExactType(referenceEntity.getSchemaClass());
+            document.setType(values.canonical(getReferenceTypes(referenceEntity.getClass())));
+            document.setExactType(values.canonical(referenceEntity.getSchemaClass()));
 
             if (referenceEntity.getName() != null && !referenceEntity.getName().isEmpty()) {
                 setReferenceNameAndSynonyms(document, referenceEntity, referenceEntity.getName());
@@ -442,7 +492,7 @@ class DocumentBuilder {
                 referenceIdentifiers.add(identifier);
                 referenceIdentifiers.add(referenceEntity.getReferenceDatabase().getDisplayName() + ":" + identifier);
                 document.setReferenceIdentifiers(referenceIdentifiers);
-                document.setDatabaseName(referenceEntity.getReferenceDatabase().getDisplayName());
+                document.setDatabaseName(values.canonical(referenceEntity.getReferenceDatabase().getDisplayName()));
 
                 String url = referenceEntity.getReferenceDatabase().getAccessUrl();
                 if (StringUtils.isNotEmpty(url)) {
@@ -452,17 +502,17 @@ class DocumentBuilder {
         }
     }
 
-    private String getReferenceTypes(ReferenceEntity referenceEntity) {
-        if (referenceEntity instanceof ReferenceGeneProduct) {
+    static String getReferenceTypes(Class<?> referenceEntity) {
+        if (ReferenceGeneProduct.class.isAssignableFrom(referenceEntity)) {
             return "Protein";
-        } else if (referenceEntity instanceof ReferenceDNASequence) {
+        } else if (ReferenceDNASequence.class.isAssignableFrom(referenceEntity)) {
             return "DNA Sequence";
-        } else if (referenceEntity instanceof ReferenceRNASequence) {
+        } else if (ReferenceRNASequence.class.isAssignableFrom(referenceEntity)) {
             return "RNA Sequence";
-        } else if (referenceEntity instanceof ReferenceMolecule || referenceEntity instanceof ReferenceGroup) {
+        } else if (ReferenceMolecule.class.isAssignableFrom(referenceEntity) || ReferenceGroup.class.isAssignableFrom(referenceEntity)) {
             return "Chemical Compound";
         } else {
-            return referenceEntity.getSchemaClass();
+            return referenceEntity.getSimpleName();
         }
     }
 
@@ -479,7 +529,7 @@ class DocumentBuilder {
 
             CrossReference crossReference = new CrossReference();
             crossReference.setId(databaseIdentifier.getIdentifier());
-            crossReference.setDbName(databaseIdentifier.getReferenceDatabase().getDisplayName());
+            crossReference.setDbName(values.canonical(databaseIdentifier.getReferenceDatabase().getDisplayName()));
             allXRefs.add(crossReference);
         }
 
@@ -500,24 +550,24 @@ class DocumentBuilder {
      *
      * @return type
      */
-    private String getType(DatabaseObject databaseObject) {
-        if (databaseObject instanceof EntitySet) {
+    static String getType(Class<?> schemaClass) {
+        if (EntitySet.class.isAssignableFrom(schemaClass)) {
             // Any instance of CandidateSet, DefinedSet, OpenSet
             return "Set";
-        } else if (databaseObject instanceof GenomeEncodedEntity) {
+        } else if (GenomeEncodedEntity.class.isAssignableFrom(schemaClass)) {
             // Any instance of GenomeEncodedEntity is setting the type based on its Reference
             return "Genes and Transcripts";
-        } else if (databaseObject instanceof Pathway) {
+        } else if (Pathway.class.isAssignableFrom(schemaClass)) {
             // Also covering TopLevelPathway
             return "Pathway";
-        } else if (databaseObject instanceof ReactionLikeEvent) {
+        } else if (ReactionLikeEvent.class.isAssignableFrom(schemaClass)) {
             // Also covering BlackBoxEvent, (De)Polymerisation, (Failed)Reaction
             return "Reaction";
-        } else if (databaseObject instanceof Regulation) {
+        } else if (Regulation.class.isAssignableFrom(schemaClass)) {
             // Also covering PositiveRegulation, NegativeRegulation, Requirement
             return "Regulation";
         } else {
-            return databaseObject.getSchemaClass();
+            return schemaClass.getSimpleName();
         }
     }
 
@@ -600,11 +650,18 @@ class DocumentBuilder {
      *
      * @param document solr document
      */
-    private void setKeywords(IndexDocument document) {
+    void setKeywords(IndexDocument document) {
         if (keywords == null) return;
 
         // TODO: Flo says the way it is implemented is not nice. Right we check into a static file with defined vocabulary. Would be nice if we check which reactions are in a bind reaction e.g and then add it as keyword.
-        document.setKeywords(keywords.stream().filter(keyword -> document.getName().toLowerCase().contains(keyword.toLowerCase())).collect(Collectors.toList()));
+        document.setKeywords(keywords.find(document.getName()));
+    }
+
+    /**
+     * @return pool of the values repeated across documents, shared with the other document builders
+     */
+    ValuePool getValuePool() {
+        return values;
     }
 
     /**
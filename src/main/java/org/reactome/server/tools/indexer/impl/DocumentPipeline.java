@@ -0,0 +1,256 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.metrics.Histogram;
+import org.reactome.server.tools.indexer.metrics.IndexerMetrics;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Staged pipeline connecting the graph workers to the Solr and XML outputs.
+ * <p>
+ * Graph workers (owned by the Indexer) either submit already created documents or a build task holding data
+ * fetched from the graph. Build tasks are run by the build stage. Every batch of documents is then handed to the
+ * Solr senders and to the XML writer, each running on its own threads. Batches keep the number of the chunk of
+ * dbIds they come from, so the Solr sink knows which chunks have been acknowledged (see IndexerCheckpoint).
+ * <p>
+ * Stages are connected by bounded queues. A full queue blocks the stage feeding it, which keeps the amount of
+ * documents in memory bounded. Queue depths are sampled every second into the metrics and logged periodically.
+ */
+class DocumentPipeline implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final long SAMPLE_INTERVAL = 1; // seconds
+    private static final long LOG_INTERVAL = 30; // samples
+    private static final long OFFER_TIMEOUT = 1; // seconds
+
+    // End of stream markers, compared by reference
+    private static final Batch<Callable<List<IndexDocument>>> END_OF_TASKS = new Batch<>(-1, Collections::emptyList);
+    private static final Batch<List<IndexDocument>> END_OF_DOCUMENTS = new Batch<>(-1, Collections.emptyList());
+
+    interface DocumentSink {
+        /**
+         * @param chunk     chunk of dbIds the documents come from
+         * @param documents documents to be sent, empty if none could be created for the chunk
+         */
+        void accept(int chunk, List<IndexDocument> documents) throws IndexerException;
+    }
+
+    private static class Batch<T> {
+        final int chunk;
+        final T content;
+
+        Batch(int chunk, T content) {
+            this.chunk = chunk;
+            this.content = content;
+        }
+    }
+
+    private final String name;
+    private final int capacity;
+
+    private final BlockingQueue<Batch<Callable<List<IndexDocument>>>> buildQueue;
+    private final BlockingQueue<Batch<List<IndexDocument>>> solrQueue;
+    private final BlockingQueue<Batch<List<IndexDocument>>> xmlQueue;
+
+    private final List<Thread> buildThreads = new ArrayList<>();
+    private final List<Thread> solrThreads = new ArrayList<>();
+    private Thread xmlThread;
+    private final ScheduledExecutorService monitor;
+    private final IndexerMetrics metrics;
+    private final Histogram buildTime;
+    private final Histogram xmlWriteTime;
+    private int samples = 0;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicInteger documentsSent = new AtomicInteger(0);
+
+    /**
+     * @param name        used to name the threads and in the log
+     * @param builders    number of threads running build tasks
+     * @param senders     number of threads sending documents to Solr
+     * @param capacity    maximum number of batches waiting in every queue
+     * @param solrSink    sends a batch of documents to Solr
+     * @param marshaller  writes the ebeye.xml entries, null if the XML output is not required
+     * @param metrics     records the build and XML write times and the queue depths
+     */
+    DocumentPipeline(String name, int builders, int senders, int capacity, DocumentSink solrSink, Marshaller marshaller, IndexerMetrics metrics) {
+        this.name = name;
+        this.capacity = capacity;
+        this.metrics = metrics;
+        this.buildTime = metrics.latency(IndexerMetrics.DOCUMENT_BUILD);
+        this.xmlWriteTime = metrics.latency(IndexerMetrics.XML_WRITE);
+
+        buildQueue = new ArrayBlockingQueue<>(capacity);
+        solrQueue = new ArrayBlockingQueue<>(capacity);
+        xmlQueue = marshaller != null ? new ArrayBlockingQueue<>(capacity) : null;
+
+        for (int i = 1; i <= builders; i++) {
+            buildThreads.add(start(name + "-build-" + i, this::runBuilder));
+        }
+        for (int i = 1; i <= senders; i++) {
+            solrThreads.add(start(name + "-solr-" + i, () -> runSolrSender(solrSink)));
+        }
+        if (marshaller != null) {
+            xmlThread = start(name + "-xml", () -> runXmlWriter(marshaller));
+        }
+
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleAtFixedRate(this::sampleQueueDepths, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hands a task to the build stage. Blocks while the build queue is full.
+     */
+    void submitBuild(int chunk, Callable<List<IndexDocument>> task) throws IndexerException {
+        put(buildQueue, new Batch<>(chunk, task));
+    }
+
+    /**
+     * Hands a batch of documents to the sinks. Blocks while any of the sink queues is full.
+     * Empty batches still reach the Solr sink, which acknowledges the chunk.
+     */
+    void submitDocuments(int chunk, List<IndexDocument> documents) throws IndexerException {
+        Batch<List<IndexDocument>> batch = new Batch<>(chunk, documents);
+        put(solrQueue, batch);
+        if (xmlQueue != null && !documents.isEmpty()) put(xmlQueue, batch);
+    }
+
+    int getDocumentsSent() {
+        return documentsSent.get();
+    }
+
+    /**
+     * Drains every stage, waits for the threads to finish and throws the first error raised by any stage.
+     */
+    @Override
+    public void close() throws IndexerException {
+        try {
+            for (int i = 0; i < buildThreads.size(); i++) put(buildQueue, END_OF_TASKS);
+            join(buildThreads);
+
+            for (int i = 0; i < solrThreads.size(); i++) put(solrQueue, END_OF_DOCUMENTS);
+            if (xmlQueue != null) put(xmlQueue, END_OF_DOCUMENTS);
+            join(solrThreads);
+            if (xmlThread != null) join(Collections.singletonList(xmlThread));
+        } finally {
+            monitor.shutdownNow();
+            metrics.queuesClosed();
+            if (failure.get() != null) {
+                buildThreads.forEach(Thread::interrupt);
+                solrThreads.forEach(Thread::interrupt);
+                if (xmlThread != null) xmlThread.interrupt();
+            }
+        }
+        checkFailure();
+        logQueueDepths();
+    }
+
+    private void runBuilder() throws Exception {
+        Batch<Callable<List<IndexDocument>>> task;
+        while ((task = buildQueue.take()) != END_OF_TASKS) {
+            long start = System.nanoTime();
+            List<IndexDocument> documents = task.content.call();
+            buildTime.recordSince(start);
+            submitDocuments(task.chunk, documents);
+        }
+    }
+
+    private void runSolrSender(DocumentSink solrSink) throws Exception {
+        Batch<List<IndexDocument>> batch;
+        while ((batch = solrQueue.take()) != END_OF_DOCUMENTS) {
+            solrSink.accept(batch.chunk, batch.content);
+            logger.info(documentsSent.addAndGet(batch.content.size()) + " " + name + " have now been added to SolR");
+        }
+    }
+
+    private void runXmlWriter(Marshaller marshaller) throws Exception {
+        Batch<List<IndexDocument>> batch;
+        while ((batch = xmlQueue.take()) != END_OF_DOCUMENTS) {
+            long start = System.nanoTime();
+            for (IndexDocument document : batch.content) {
+                marshaller.writeEntry(document);
+            }
+            try {
+                marshaller.flush();
+            } catch (IOException e) {
+                logger.error("An error occurred when trying to flush to XML", e);
+            }
+            xmlWriteTime.recordSince(start);
+        }
+    }
+
+    private void sampleQueueDepths() {
+        metrics.queueDepth("build", buildQueue.size());
+        metrics.queueDepth("solr", solrQueue.size());
+        if (xmlQueue != null) metrics.queueDepth("xml", xmlQueue.size());
+        if (++samples % LOG_INTERVAL == 0) logQueueDepths();
+    }
+
+    private void logQueueDepths() {
+        logger.info("[" + name + "] queue depths (capacity " + capacity + ") -> build: " + buildQueue.size() +
+                ", solr: " + solrQueue.size() + (xmlQueue != null ? ", xml: " + xmlQueue.size() : ""));
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T item) throws IndexerException {
+        try {
+            while (!queue.offer(item, OFFER_TIMEOUT, TimeUnit.SECONDS)) {
+                // the consumer may have died, in that case the queue will never have space again
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexerException("Interrupted while waiting for the " + name + " pipeline", e);
+        }
+    }
+
+    private void join(List<Thread> threads) throws IndexerException {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexerException("Interrupted while waiting for the " + name + " pipeline", e);
+        }
+    }
+
+    private void checkFailure() throws IndexerException {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new IndexerException("An error occurred in the " + name + " pipeline", t);
+        }
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private Thread start(String threadName, Stage stage) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                logger.error("Stage " + threadName + " has failed", t);
+                failure.compareAndSet(null, t);
+            }
+        }, threadName);
+        thread.start();
+        return thread;
+    }
+}
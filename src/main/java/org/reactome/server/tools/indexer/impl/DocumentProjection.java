@@ -0,0 +1,632 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.ogm.model.Result;
+import org.neo4j.ogm.session.Session;
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.indexer.model.CrossReference;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.util.ValuePool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates the SolR documents for a batch of dbIds using a fixed number of Cypher queries.
+ * <p>
+ * {@link DocumentBuilder} loads every object by its dbId and relies on lazy-loading for all the relationships,
+ * which means dozens of round trips to the graph per document. Here all the attributes needed for a batch of
+ * dbIds are projected into flat rows (one row per dbId in each query) and the documents are assembled from
+ * those rows, following the same rules applied in the DocumentBuilder.
+ * <p>
+ * The rows can also be exported to a {@link GraphSnapshot} and read back from it, so the documents are built
+ * without the graph.
+ */
+@Service
+class DocumentProjection {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final String DOMAIN_PACKAGE = DatabaseObject.class.getPackage().getName() + ".";
+    private static final String NO_SPECIES = "Entries without species";
+
+    // Number of dbIds sent in every projection query
+    static final int BATCH_SIZE = 250;
+
+    // Tables of the projected rows in a GraphSnapshot
+    private static final String ATTRIBUTES = "attributes";
+    private static final String LITERATURE = "literature";
+    private static final String REFERENCES = "references";
+    // Attribute only exported to snapshots, the fireworks species of SimpleEntities come from the reactions
+    private static final String SIMPLE_ENTITY_SPECIES = "simpleEntitySpecies";
+
+    private static final String ATTRIBUTES_QUERY = "" +
+            "UNWIND {dbIds} AS id " +
+            "MATCH (n:DatabaseObject{dbId:id}) " +
+            "OPTIONAL MATCH (n)-[r:summation]->(sm:Summation) " +
+            "WITH n, sm, r ORDER BY r.order " +
+            "WITH n, COLLECT(sm.text) AS summations " +
+            "OPTIONAL MATCH (n)-[r:compartment]->(c:Compartment) " +
+            "WITH n, summations, c, r ORDER BY r.order " +
+            "WITH n, summations, COLLECT(CASE WHEN c IS NULL THEN NULL ELSE {name:c.displayName, accession:c.accession} END) AS compartments " +
+            "OPTIONAL MATCH (n)-[r:species]->(s:Taxon) " +
+            "WITH n, summations, compartments, s, r ORDER BY r.order " +
+            "WITH n, summations, compartments, COLLECT(CASE WHEN s IS NULL THEN NULL ELSE {name:s.displayName, taxId:s.taxId} END) AS species " +
+            "OPTIONAL MATCH (n)-[r:relatedSpecies]->(rs:Species) " +
+            "WITH n, summations, compartments, species, rs, r ORDER BY r.order " +
+            "WITH n, summations, compartments, species, COLLECT(rs.displayName) AS relatedSpecies " +
+            "OPTIONAL MATCH (n)-[r:crossReference]->(x:DatabaseIdentifier) " +
+            "WITH n, summations, compartments, species, relatedSpecies, x, r ORDER BY r.order " +
+            "WITH n, summations, compartments, species, relatedSpecies, COLLECT(CASE WHEN x IS NULL THEN NULL ELSE {displayName:x.displayName, identifier:x.identifier, databaseName:x.databaseName} END) AS crossReferences " +
+            "OPTIONAL MATCH (n)-[:disease]->(d:Disease) " +
+            "WITH n, summations, compartments, species, relatedSpecies, crossReferences, COLLECT(CASE WHEN d IS NULL THEN NULL ELSE {identifier:d.identifier, name:d.name, synonym:d.synonym} END) AS diseases " +
+            "OPTIONAL MATCH (n)-[:goCellularComponent|goBiologicalProcess]->(go:GO_Term) " +
+            "WITH n, summations, compartments, species, relatedSpecies, crossReferences, diseases, COLLECT(CASE WHEN go IS NULL THEN NULL ELSE {name:go.displayName, accession:go.accession, schemaClass:go.schemaClass} END) AS goTerms " +
+            "OPTIONAL MATCH (n)-[r:catalystActivity]->(:CatalystActivity)-[:activity]->(mf:GO_MolecularFunction) " +
+            "WITH n, summations, compartments, species, relatedSpecies, crossReferences, diseases, goTerms, mf, r ORDER BY r.order " +
+            "WITH n, summations, compartments, species, relatedSpecies, crossReferences, diseases, goTerms, COLLECT(CASE WHEN mf IS NULL THEN NULL ELSE {name:mf.displayName, accession:mf.accession} END) AS activities " +
+            "RETURN n.dbId AS dbId, n.stId AS stId, n.oldStId AS oldStId, n.displayName AS displayName, n.schemaClass AS schemaClass, n.name AS name, " +
+            "       summations, compartments, species, relatedSpecies, crossReferences, diseases, goTerms, activities";
+
+    private static final String LITERATURE_QUERY = "" +
+            "UNWIND {dbIds} AS id " +
+            "MATCH (n:DatabaseObject{dbId:id}) " +
+            "OPTIONAL MATCH (n)-[:literatureReference]->(p:Publication) " +
+            "OPTIONAL MATCH (p)-[:author]->(a:Person) " +
+            "WITH n, p, COLLECT(toString(a.dbId) + '#' + a.displayName) AS authors " +
+            "WITH n, COLLECT(CASE WHEN p IS NULL THEN NULL ELSE {title:p.title, schemaClass:p.schemaClass, pubMedIdentifier:p.pubMedIdentifier, isbn:p.ISBN, authors:authors} END) AS publications " +
+            "OPTIONAL MATCH (n)-[:authored|reviewed]->(:InstanceEdit)-[:author]->(pe:Person) " +
+            "WITH n, publications, COLLECT(DISTINCT CASE WHEN pe IS NULL THEN NULL ELSE {firstname:pe.firstname, initial:pe.initial, surname:pe.surname, orcidId:pe.orcidId} END) AS authoredBy " +
+            "RETURN n.dbId AS dbId, publications, authoredBy";
+
+    private static final String REFERENCES_QUERY = "" +
+            "UNWIND {dbIds} AS id " +
+            "MATCH (n:DatabaseObject{dbId:id}) " +
+            "OPTIONAL MATCH (n)-[:referenceEntity]->(re:ReferenceEntity) " +
+            "OPTIONAL MATCH (re)-[:referenceDatabase]->(rd:ReferenceDatabase) " +
+            "OPTIONAL MATCH (re)-[:crossReference]->(rx:DatabaseIdentifier) " +
+            "OPTIONAL MATCH (rx)-[:referenceDatabase]->(rxd:ReferenceDatabase) " +
+            "WITH n, re, rd, COLLECT(CASE WHEN rx IS NULL THEN NULL ELSE {identifier:rx.identifier, databaseName:rxd.displayName} END) AS xrefs " +
+            "WITH n, COLLECT(CASE WHEN re IS NULL THEN NULL ELSE {identifier:re.identifier, schemaClass:re.schemaClass, displayName:re.displayName, name:re.name, " +
+            "                     variantIdentifier:re.variantIdentifier, geneName:re.geneName, secondaryIdentifier:re.secondaryIdentifier, otherIdentifier:re.otherIdentifier, " +
+            "                     databaseName:rd.displayName, accessUrl:rd.accessUrl, crossReferences:xrefs} END)[0] AS referenceEntity " +
+            "OPTIONAL MATCH (n)-[:regulatedEntity]->(red:DatabaseObject) " +
+            "OPTIONAL MATCH (red)-[:physicalEntity]->(redpe:PhysicalEntity) " +
+            "WITH n, referenceEntity, COLLECT(CASE WHEN red IS NULL THEN NULL ELSE {dbId:red.dbId, stId:red.stId, displayName:red.displayName, schemaClass:red.schemaClass, name:red.name, physicalEntityName:redpe.name} END)[0] AS regulatedEntity " +
+            "OPTIONAL MATCH (n)-[:regulator]->(reg:DatabaseObject) " +
+            "OPTIONAL MATCH (reg)-[:physicalEntity]->(regpe:PhysicalEntity) " +
+            "WITH n, referenceEntity, regulatedEntity, COLLECT(CASE WHEN reg IS NULL THEN NULL ELSE {dbId:reg.dbId, stId:reg.stId, displayName:reg.displayName, schemaClass:reg.schemaClass, name:reg.name, physicalEntityName:regpe.name} END)[0] AS regulator " +
+            "RETURN n.dbId AS dbId, referenceEntity, regulatedEntity, regulator";
+
+    private final Map<String, Class<?>> schemaClasses = new ConcurrentHashMap<>();
+
+    private Session session;
+    private DocumentBuilder documentBuilder;
+
+    /**
+     * Creates the documents for the given dbIds. Ids that could not be found in the graph are added to missing
+     *
+     * @param dbIds   the dbIds to be projected
+     * @param missing collection where the ids not present in the graph are added
+     * @return the documents in the same order as the dbIds
+     */
+    List<IndexDocument> createSolrDocuments(List<Long> dbIds, Collection<Long> missing) {
+        return build(fetch(dbIds), missing);
+    }
+
+    /**
+     * Graph stage: runs the projection queries for the given dbIds in batches of {@link #BATCH_SIZE}.
+     *
+     * @param dbIds the dbIds to be projected
+     * @return the rows of every query for the given dbIds
+     */
+    ProjectedRows fetch(List<Long> dbIds) {
+        ProjectedRows rows = new ProjectedRows(dbIds);
+        for (int i = 0; i < dbIds.size(); i += BATCH_SIZE) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("dbIds", new ArrayList<>(dbIds.subList(i, Math.min(i + BATCH_SIZE, dbIds.size()))));
+
+            rows.attributes.putAll(query(ATTRIBUTES_QUERY, params));
+            rows.literature.putAll(query(LITERATURE_QUERY, params));
+            rows.references.putAll(query(REFERENCES_QUERY, params));
+        }
+        return rows;
+    }
+
+    /**
+     * Snapshot stage: reads the rows of the given dbIds from a snapshot instead of the graph
+     *
+     * @param snapshot previously exported by {@link #export(String, ProjectedRows, GraphSnapshot.Writer)}
+     * @param dbIds    the dbIds to be read
+     * @return the rows of every query for the given dbIds
+     */
+    ProjectedRows read(GraphSnapshot snapshot, List<Long> dbIds) {
+        ProjectedRows rows = new ProjectedRows(dbIds);
+        for (Long dbId : dbIds) {
+            putIfNotNull(rows.attributes, dbId, snapshot.getRow(ATTRIBUTES, dbId));
+            putIfNotNull(rows.literature, dbId, snapshot.getRow(LITERATURE, dbId));
+            putIfNotNull(rows.references, dbId, snapshot.getRow(REFERENCES, dbId));
+        }
+        return rows;
+    }
+
+    /**
+     * Writes previously fetched rows to a snapshot. The species of SimpleEntities, otherwise taken from the graph
+     * when the document is built, are added to their attributes.
+     *
+     * @param className class of the dbIds
+     * @param rows      the result of {@link #fetch(List)}
+     * @return number of exported dbIds, those not present in the graph are skipped
+     */
+    int export(String className, ProjectedRows rows, GraphSnapshot.Writer writer) throws IOException {
+        int exported = 0;
+        for (Long dbId : rows.dbIds) {
+            Map<String, Object> row = rows.attributes.get(dbId);
+            if (row == null) continue;
+            if (SimpleEntity.class.isAssignableFrom(getSchemaClass(str(row.get("schemaClass"))))) {
+                Set<String> species = documentBuilder.getSimpleEntitySpecies(dbId);
+                row = new HashMap<>(row);
+                row.put(SIMPLE_ENTITY_SPECIES, species == null ? Collections.emptyList() : new ArrayList<>(species));
+            }
+            Map<String, Map<String, Object>> tables = new LinkedHashMap<>();
+            tables.put(ATTRIBUTES, row);
+            tables.put(LITERATURE, rows.literature.get(dbId));
+            tables.put(REFERENCES, rows.references.get(dbId));
+            writer.add(className, dbId, tables);
+            exported++;
+        }
+        return exported;
+    }
+
+    private static void putIfNotNull(Map<Long, Map<String, Object>> rows, Long dbId, Map<String, Object> row) {
+        if (row != null) rows.put(dbId, row);
+    }
+
+    /**
+     * Build stage: assembles the documents from previously fetched rows. It does not touch the graph.
+     *
+     * @param rows    the result of {@link #fetch(List)}
+     * @param missing collection where the ids not present in the graph are added
+     * @return the documents in the same order as the dbIds
+     */
+    List<IndexDocument> build(ProjectedRows rows, Collection<Long> missing) {
+        List<IndexDocument> documents = new ArrayList<>(rows.dbIds.size());
+        for (Long dbId : rows.dbIds) {
+            Map<String, Object> row = rows.attributes.get(dbId);
+            if (row == null) {
+                logger.error("Database object not found - id: " + dbId);
+                missing.add(dbId);
+                continue;
+            }
+            documents.add(createSolrDocument(dbId, row, rows.literature.get(dbId), rows.references.get(dbId)));
+        }
+        return documents;
+    }
+
+    private Map<Long, Map<String, Object>> query(String query, Map<String, Object> params) {
+        Result result = session.query(query, params);
+        Map<Long, Map<String, Object>> rows = new HashMap<>();
+        for (Map<String, Object> row : result.queryResults()) {
+            rows.put(((Number) row.get("dbId")).longValue(), row);
+        }
+        return rows;
+    }
+
+    private IndexDocument createSolrDocument(Long dbId, Map<String, Object> row, Map<String, Object> literature, Map<String, Object> references) {
+        String exactType = str(row.get("schemaClass"));
+        Class<?> schemaClass = getSchemaClass(exactType);
+
+        IndexDocument document = new IndexDocument();
+        document.setDbId(dbId.toString());
+        document.setStId(str(row.get("stId")));
+        document.setOldStId(str(row.get("oldStId")));
+        ValuePool values = documentBuilder.getValuePool();
+        document.setType(values.canonical(DocumentBuilder.getType(schemaClass)));
+        document.setExactType(values.canonical(exactType));
+
+        boolean isPhysicalEntity = PhysicalEntity.class.isAssignableFrom(schemaClass);
+        boolean isEvent = Event.class.isAssignableFrom(schemaClass);
+        boolean isRegulation = Regulation.class.isAssignableFrom(schemaClass);
+
+        if (isPhysicalEntity || isEvent || isRegulation) {
+            // GENERAL ATTRIBUTES
+            setNameAndSynonyms(document, str(row.get("displayName")), strings(row.get("name")));
+            if (literature != null) setLiteratureReference(document, maps(literature.get("publications")));
+            setSummation(document, strings(row.get("summations")));
+            setSpecies(document, schemaClass, maps(row.get("species")), strings(row.get("relatedSpecies")));
+        }
+
+        if (isPhysicalEntity || isEvent) {
+            setDiseases(document, maps(row.get("diseases")));
+            setCompartment(document, maps(row.get("compartments")));
+            setCrossReference(document, maps(row.get("crossReferences")));
+            setGoTerms(document, maps(row.get("goTerms")));
+        }
+
+        if (isPhysicalEntity && references != null) {
+            // SPECIFIC FOR PHYSICAL ENTITIES
+            if (EntityWithAccessionedSequence.class.isAssignableFrom(schemaClass) || OpenSet.class.isAssignableFrom(schemaClass) || SimpleEntity.class.isAssignableFrom(schemaClass)) {
+                setReferenceEntity(document, map(references.get("referenceEntity")));
+            }
+        } else if (isEvent) {
+            // SPECIFIC FOR EVENT
+            if (literature != null) setAuthorAndReviewed(document, maps(literature.get("authoredBy")));
+            if (ReactionLikeEvent.class.isAssignableFrom(schemaClass)) {
+                for (Map<String, Object> activity : maps(row.get("activities"))) {
+                    document.addGoMolecularFunctionName(values.canonical(str(activity.get("name"))));
+                    document.addGoMolecularFunctionAccession(values.canonical("go:".concat(str(activity.get("accession")))));
+                    document.addGoMolecularFunctionAccession(values.canonical(str(activity.get("accession"))));
+                }
+            }
+        } else if (isRegulation && references != null) {
+            // SPECIFIC FOR REGULATIONS
+            Map<String, Object> regulatedEntity = map(references.get("regulatedEntity"));
+            if (regulatedEntity != null) {
+                document.setRegulatedEntity(getSummaryName(regulatedEntity, false));
+                document.setRegulatedEntityId(getSummaryId(regulatedEntity));
+            }
+            Map<String, Object> regulator = map(references.get("regulator"));
+            if (regulator != null) {
+                document.setRegulator(getSummaryName(regulator, true));
+                document.setRegulatorId(getSummaryId(regulator));
+            }
+        }
+
+        setFireworksSpecies(document, dbId, schemaClass, row);
+
+        // Keyword uses the document.getName. Name is set in the document by calling setNameAndSynonyms
+        documentBuilder.setKeywords(document);
+
+        return document;
+    }
+
+    private void setNameAndSynonyms(IndexDocument document, String displayName, List<String> name) {
+        if (name.isEmpty()) {
+            // some regulations do not have name
+            document.setName(displayName);
+            return;
+        }
+        document.setName(name.get(0));
+        if (name.size() > 1) {
+            document.setSynonyms(new ArrayList<>(name.subList(1, name.size())));
+        }
+    }
+
+    private void setLiteratureReference(IndexDocument document, List<Map<String, Object>> publications) {
+        if (publications.isEmpty()) return;
+
+        Set<String> titles = new HashSet<>();
+        Set<String> pubMedIdentifiers = new HashSet<>();
+        Set<String> isbns = new HashSet<>();
+        Set<String> authors = new HashSet<>();
+        for (Map<String, Object> publication : publications) {
+            titles.add(str(publication.get("title")));
+            String publicationClass = str(publication.get("schemaClass"));
+            if (LiteratureReference.class.getSimpleName().equals(publicationClass)) {
+                pubMedIdentifiers.add(publication.get("pubMedIdentifier") + "");
+            } else if (Book.class.getSimpleName().equals(publicationClass)) {
+                String isbn = str(publication.get("isbn"));
+                if (StringUtils.isNotEmpty(isbn)) isbns.add(isbn);
+            }
+            // authors come as "dbId#displayName" to remove duplicated authors as the DocumentBuilder does
+            authors.addAll(strings(publication.get("authors")));
+        }
+
+        document.setLiteratureReferenceTitle(new ArrayList<>(titles));
+        document.setLiteratureReferencePubMedId(new ArrayList<>(pubMedIdentifiers));
+        document.setLiteratureReferenceIsbn(new ArrayList<>(isbns));
+        List<String> authorNames = new ArrayList<>(authors.size());
+        for (String author : authors) {
+            authorNames.add(author.split("#")[1]);
+        }
+        document.setLiteratureReferenceAuthor(authorNames);
+    }
+
+    private void setSummation(IndexDocument document, List<String> summations) {
+        if (summations.isEmpty()) return;
+        DocumentBuilder.setSummation(document, StringUtils.join(summations, "<br>"));
+    }
+
+    private void setDiseases(IndexDocument document, List<Map<String, Object>> diseases) {
+        if (diseases.isEmpty()) {
+            document.setIsDisease(false);
+            return;
+        }
+
+        List<String> diseasesId = new ArrayList<>();
+        List<String> diseaseNames = new ArrayList<>();
+        List<String> diseaseSynonyms = new ArrayList<>();
+        for (Map<String, Object> disease : diseases) {
+            diseasesId.add(str(disease.get("identifier")));
+            diseaseNames.addAll(strings(disease.get("name")));
+            diseaseSynonyms.addAll(strings(disease.get("synonym")));
+        }
+        for (Map<String, Object> disease : diseases) {
+            diseasesId.add("doid:" + str(disease.get("identifier")));
+        }
+
+        document.setDiseaseId(diseasesId);
+        document.setDiseaseName(diseaseNames);
+        document.setDiseaseSynonyms(diseaseSynonyms);
+        document.setIsDisease(true);
+    }
+
+    private void setCompartment(IndexDocument document, List<Map<String, Object>> compartments) {
+        if (compartments.isEmpty()) return;
+
+        ValuePool values = documentBuilder.getValuePool();
+        List<String> names = new ArrayList<>(compartments.size());
+        List<String> accessions = new ArrayList<>(compartments.size());
+        for (Map<String, Object> compartment : compartments) {
+            names.add(values.canonical(str(compartment.get("name"))));
+            accessions.add(values.canonical(str(compartment.get("accession"))));
+        }
+        document.setCompartmentName(names);
+        document.setCompartmentAccession(accessions);
+    }
+
+    private void setCrossReference(IndexDocument document, List<Map<String, Object>> crossReferences) {
+        if (crossReferences.isEmpty()) return;
+
+        List<String> crossReferencesInfo = new ArrayList<>();
+        List<CrossReference> allXRefs = new ArrayList<>();
+        for (Map<String, Object> databaseIdentifier : crossReferences) {
+            crossReferencesInfo.add(str(databaseIdentifier.get("displayName")));
+            crossReferencesInfo.add(str(databaseIdentifier.get("identifier")));
+            allXRefs.add(getCrossReference(str(databaseIdentifier.get("databaseName")), str(databaseIdentifier.get("identifier"))));
+        }
+
+        document.setCrossReferences(crossReferencesInfo);
+        document.setAllCrossReferences(allXRefs);
+    }
+
+    private void setGoTerms(IndexDocument document, List<Map<String, Object>> goTerms) {
+        ValuePool values = documentBuilder.getValuePool();
+        for (Map<String, Object> goTerm : goTerms) {
+            String accession = values.canonical(str(goTerm.get("accession")));
+            String goClass = str(goTerm.get("schemaClass"));
+            if (GO_BiologicalProcess.class.getSimpleName().equals(goClass)) {
+                document.setGoBiologicalProcessAccessions(Arrays.asList(values.canonical("go:".concat(accession)), accession));
+                document.setGoBiologicalProcessName(values.canonical(str(goTerm.get("name"))));
+            } else if (GO_CellularComponent.class.getSimpleName().equals(goClass)) {
+                document.setGoCellularComponentAccessions(Arrays.asList(values.canonical("go:".concat(accession)), accession));
+                document.setGoCellularComponentName(values.canonical(str(goTerm.get("name"))));
+            }
+        }
+    }
+
+    private void setSpecies(IndexDocument document, Class<?> schemaClass, List<Map<String, Object>> species, List<String> relatedSpecies) {
+        boolean hasSpecies = GenomeEncodedEntity.class.isAssignableFrom(schemaClass) || EntitySet.class.isAssignableFrom(schemaClass)
+                || Complex.class.isAssignableFrom(schemaClass) || SimpleEntity.class.isAssignableFrom(schemaClass)
+                || Polymer.class.isAssignableFrom(schemaClass) || Event.class.isAssignableFrom(schemaClass);
+        boolean hasRelatedSpecies = EntitySet.class.isAssignableFrom(schemaClass) || Complex.class.isAssignableFrom(schemaClass)
+                || Event.class.isAssignableFrom(schemaClass);
+
+        ValuePool values = documentBuilder.getValuePool();
+        if (hasRelatedSpecies && !relatedSpecies.isEmpty()) {
+            document.setRelatedSpecies(values.canonical(relatedSpecies));
+        }
+
+        if (!hasSpecies || species.isEmpty()) {
+            document.setSpecies(Collections.singletonList(NO_SPECIES));
+            return;
+        }
+
+        List<String> names = new ArrayList<>(species.size());
+        List<String> taxIds = new ArrayList<>(species.size());
+        for (Map<String, Object> taxon : species) {
+            names.add(values.canonical(str(taxon.get("name"))));
+            taxIds.add(values.canonical(str(taxon.get("taxId"))));
+        }
+        document.setSpecies(names);
+        document.setTaxId(taxIds);
+    }
+
+    private void setReferenceEntity(IndexDocument document, Map<String, Object> referenceEntity) {
+        if (referenceEntity == null) return;
+
+        String referenceExactType = str(referenceEntity.get("schemaClass"));
+        Class<?> referenceClass = getSchemaClass(referenceExactType);
+        String identifier = str(referenceEntity.get("identifier"));
+
+        if (ReferenceSequence.class.isAssignableFrom(referenceClass)) {
+            document.setReferenceGeneNames(nullIfEmpty(strings(referenceEntity.get("geneName"))));
+            document.setReferenceSecondaryIdentifier(nullIfEmpty(strings(referenceEntity.get("secondaryIdentifier"))));
+
+            // variant Identifier has to be set in case is ReferenceIsoform
+            String variantIdentifier = str(referenceEntity.get("variantIdentifier"));
+            if (ReferenceIsoform.class.isAssignableFrom(referenceClass) && StringUtils.isNotEmpty(variantIdentifier)) {
+                identifier = variantIdentifier;
+            }
+        }
+
+        // Setting TYPE and EXACT TYPE for the given PhysicalEntity
+        ValuePool values = documentBuilder.getValuePool();
+        document.setType(values.canonical(DocumentBuilder.getReferenceTypes(referenceClass)));
+        document.setExactType(values.canonical(referenceExactType));
+
+        List<String> referenceName = strings(referenceEntity.get("name"));
+        if (!referenceName.isEmpty()) {
+            document.setReferenceName(referenceName.get(0));
+            if (referenceName.size() > 1) {
+                document.setReferenceSynonyms(new ArrayList<>(referenceName.subList(1, referenceName.size())));
+            }
+        }
+
+        document.setReferenceOtherIdentifier(nullIfEmpty(strings(referenceEntity.get("otherIdentifier"))));
+
+        List<Map<String, Object>> referenceCrossReferences = maps(referenceEntity.get("crossReferences"));
+        if (!referenceCrossReferences.isEmpty()) {
+            List<String> crossReferencesInfo = new ArrayList<>();
+            List<CrossReference> allXRefs = new ArrayList<>();
+            for (Map<String, Object> databaseIdentifier : referenceCrossReferences) {
+                crossReferencesInfo.add(str(databaseIdentifier.get("identifier")));
+                allXRefs.add(getCrossReference(str(databaseIdentifier.get("databaseName")), str(databaseIdentifier.get("identifier"))));
+            }
+            document.setReferenceCrossReferences(crossReferencesInfo);
+            document.setAllCrossReferences(allXRefs);
+        }
+
+        if (identifier != null) {
+            String databaseName = values.canonical(str(referenceEntity.get("databaseName")));
+            List<String> referenceIdentifiers = new LinkedList<>();
+            referenceIdentifiers.add(identifier);
+            referenceIdentifiers.add(databaseName + ":" + identifier);
+            document.setReferenceIdentifiers(referenceIdentifiers);
+            document.setDatabaseName(databaseName);
+
+            String url = str(referenceEntity.get("accessUrl"));
+            if (StringUtils.isNotEmpty(url)) {
+                document.setReferenceURL(url.replace("###ID###", identifier));
+            }
+        }
+    }
+
+    private void setAuthorAndReviewed(IndexDocument document, List<Map<String, Object>> authoredBy) {
+        if (authoredBy.isEmpty()) return;
+
+        Set<String> authorAndReviewerNames = new HashSet<>();
+        Set<String> authorAndReviewerOrcid = new HashSet<>();
+        for (Map<String, Object> person : authoredBy) {
+            String firstname = str(person.get("firstname"));
+            authorAndReviewerNames.add((StringUtils.isEmpty(firstname) ? str(person.get("initial")) : firstname) + " " + str(person.get("surname")));
+            String orcid = str(person.get("orcidId"));
+            if (orcid != null) authorAndReviewerOrcid.add(orcid);
+        }
+
+        document.setAuthor(authorAndReviewerNames);
+        document.setAuthorOrcid(authorAndReviewerOrcid.isEmpty() ? null : authorAndReviewerOrcid);
+    }
+
+    /**
+     * Name of a regulator or a regulated entity: CatalystActivities are named after their PhysicalEntity, Events
+     * (and PhysicalEntities when it is the regulator) after their name and anything else after its displayName.
+     */
+    private String getSummaryName(Map<String, Object> summary, boolean isRegulator) {
+        Class<?> summaryClass = getSchemaClass(str(summary.get("schemaClass")));
+        List<String> names;
+        if (CatalystActivity.class.isAssignableFrom(summaryClass)) {
+            names = strings(summary.get("physicalEntityName"));
+        } else if (Event.class.isAssignableFrom(summaryClass) || (isRegulator && PhysicalEntity.class.isAssignableFrom(summaryClass))) {
+            names = strings(summary.get("name"));
+        } else {
+            names = Collections.singletonList(str(summary.get("displayName")));
+        }
+        return names.isEmpty() ? null : names.get(0);
+    }
+
+    private String getSummaryId(Map<String, Object> summary) {
+        String stId = str(summary.get("stId"));
+        return StringUtils.isNotEmpty(stId) ? stId : str(summary.get("dbId"));
+    }
+
+    private void setFireworksSpecies(IndexDocument document, Long dbId, Class<?> schemaClass, Map<String, Object> row) {
+        Set<String> fireworksSpecies;
+        if (SimpleEntity.class.isAssignableFrom(schemaClass) && row.containsKey(SIMPLE_ENTITY_SPECIES)) {
+            // Read from a snapshot
+            fireworksSpecies = new HashSet<>(documentBuilder.getValuePool().canonical(strings(row.get(SIMPLE_ENTITY_SPECIES))));
+        } else if (SimpleEntity.class.isAssignableFrom(schemaClass)) {
+            fireworksSpecies = documentBuilder.getSimpleEntitySpecies(dbId);
+        } else {
+            fireworksSpecies = new HashSet<>();
+            for (Map<String, Object> taxon : maps(row.get("species"))) {
+                fireworksSpecies.add(documentBuilder.getValuePool().canonical(str(taxon.get("name"))));
+            }
+        }
+        document.setFireworksSpecies(fireworksSpecies == null || fireworksSpecies.isEmpty() ? null : fireworksSpecies);
+    }
+
+    private CrossReference getCrossReference(String dbName, String id) {
+        CrossReference crossReference = new CrossReference();
+        crossReference.setId(id);
+        crossReference.setDbName(documentBuilder.getValuePool().canonical(dbName));
+        return crossReference;
+    }
+
+    /**
+     * @return the graph-core domain class for the given schemaClass, DatabaseObject if it is not known
+     */
+    private Class<?> getSchemaClass(String schemaClass) {
+        if (schemaClass == null) return DatabaseObject.class;
+        return schemaClasses.computeIfAbsent(schemaClass, name -> {
+            try {
+                return Class.forName(DOMAIN_PACKAGE + name);
+            } catch (ClassNotFoundException e) {
+                logger.warn("Unknown schema class " + name);
+                return DatabaseObject.class;
+            }
+        });
+    }
+
+    private static String str(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Properties and collections come either as Collection or array depending on the driver
+     */
+    private static List<String> strings(Object value) {
+        if (value == null) return Collections.emptyList();
+        Collection<?> collection;
+        if (value instanceof Collection) {
+            collection = (Collection<?>) value;
+        } else if (value instanceof Object[]) {
+            collection = Arrays.asList((Object[]) value);
+        } else {
+            return Collections.singletonList(value.toString());
+        }
+        List<String> rtn = new ArrayList<>(collection.size());
+        for (Object o : collection) {
+            if (o != null) rtn.add(o.toString());
+        }
+        return rtn;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> maps(Object value) {
+        if (value == null) return Collections.emptyList();
+        Collection<?> collection = value instanceof Object[] ? Arrays.asList((Object[]) value) : (Collection<?>) value;
+        List<Map<String, Object>> rtn = new ArrayList<>(collection.size());
+        for (Object o : collection) {
+            if (o instanceof Map) rtn.add((Map<String, Object>) o);
+        }
+        return rtn;
+    }
+
+    private static List<String> nullIfEmpty(List<String> list) {
+        return list.isEmpty() ? null : list;
+    }
+
+    /**
+     * Flat rows, keyed by dbId, returned by the projection queries
+     */
+    static class ProjectedRows {
+        private final List<Long> dbIds;
+        private final Map<Long, Map<String, Object>> attributes = new HashMap<>();
+        private final Map<Long, Map<String, Object>> literature = new HashMap<>();
+        private final Map<Long, Map<String, Object>> references = new HashMap<>();
+
+        private ProjectedRows(List<Long> dbIds) {
+            this.dbIds = dbIds;
+        }
+    }
+
+    @Autowired
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    @Autowired
+    public void setDocumentBuilder(DocumentBuilder documentBuilder) {
+        this.documentBuilder = documentBuilder;
+    }
+}
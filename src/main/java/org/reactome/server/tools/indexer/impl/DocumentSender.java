@@ -0,0 +1,24 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+
+import java.util.List;
+
+/**
+ * Sends the documents to Solr. Implementations are safe to be used by all the pipeline sender threads.
+ */
+interface DocumentSender {
+
+    /**
+     * Documents rejected by Solr are not thrown back, they are written to the dead letter file
+     *
+     * @throws IndexerException the documents could not be sent, e.g. Solr is not reachable
+     */
+    void send(List<IndexDocument> documents) throws IndexerException;
+
+    /**
+     * @return number of documents rejected by Solr so far
+     */
+    int getRejected();
+}
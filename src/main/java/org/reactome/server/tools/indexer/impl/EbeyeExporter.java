@@ -0,0 +1,178 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.FacetParams;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.model.IndexerState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the ebeye.xml from the documents already in Solr, without reading the graph database.
+ * <p>
+ * The index is split in one partition per exactType and the partitions are read concurrently, each one deep
+ * paging with its own cursorMark. Only the stored fields written to the ebeye.xml are requested. The release
+ * number is the one kept in the indexer state file by the indexing that built the index.
+ * <p>
+ * As the ebeye.xml written while indexing the graph, it does not have the interactors.
+ */
+public class EbeyeExporter {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final int CURSOR_ROWS = 2000;
+    // Interactors are not entries of the ebeye.xml
+    private static final String NOT_INTERACTORS = "-exactType:Interactor";
+
+    private final SolrClient solrClient;
+    private final int threads;
+    private final File stateFile;
+    private final String core;
+
+    /**
+     * @param threads   number of partitions read at the same time
+     * @param stateFile indexer state file, see {@link Indexer#setStateFile(File, String)}
+     * @param core      name of the exported core in the state file
+     */
+    public EbeyeExporter(SolrClient solrClient, int threads, File stateFile, String core) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.solrClient = solrClient;
+        this.threads = threads;
+        this.stateFile = stateFile;
+        this.core = core;
+    }
+
+    /**
+     * @param gzip compresses the output as it is written
+     * @return number of entries written
+     * @throws IndexerException the export has failed, the incomplete output is deleted
+     */
+    public int export(File output, boolean gzip) throws IndexerException {
+        long start = System.currentTimeMillis();
+        List<FacetField.Count> partitions = getPartitions();
+        int release = getRelease();
+        Marshaller marshaller = new Marshaller(output, Indexer.EBEYE_NAME, Indexer.EBEYE_DESCRIPTION, gzip);
+
+        AtomicInteger entriesCount = new AtomicInteger();
+        boolean exported = false;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            marshaller.writeHeader(release);
+            List<Future<?>> futures = new ArrayList<>();
+            for (FacetField.Count partition : partitions) {
+                futures.add(executor.submit(() -> {
+                    exportPartition(partition, marshaller, entriesCount);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            marshaller.writeFooter(entriesCount.get());
+            exported = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexerException("The ebeye.xml export has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IndexerException("Could not export the ebeye.xml from Solr", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (!exported) {
+                marshaller.close();
+                if (output.exists() && !output.delete()) logger.warn("Could not delete the incomplete " + output.getAbsolutePath());
+            }
+        }
+
+        logger.info(entriesCount.get() + " entries exported to " + output.getAbsolutePath() + " in " + (System.currentTimeMillis() - start) / 1000 + "s");
+        return entriesCount.get();
+    }
+
+    private void exportPartition(FacetField.Count partition, Marshaller marshaller, AtomicInteger entriesCount) throws IndexerException {
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery("exactType:" + ClientUtils.escapeQueryChars(partition.getName()));
+        query.addFilterQuery(NOT_INTERACTORS);
+        query.setFields(IndexDocumentConverter.EBEYE_FIELDS);
+        query.setRows(CURSOR_ROWS);
+        query.setSort(SolrQuery.SortClause.asc("dbId"));
+
+        int exported = 0;
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        try {
+            while (true) {
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse response = solrClient.query(query);
+                for (SolrDocument document : response.getResults()) {
+                    marshaller.writeEntry(IndexDocumentConverter.toIndexDocument(document));
+                }
+                exported += response.getResults().size();
+                String nextCursorMark = response.getNextCursorMark();
+                if (cursorMark.equals(nextCursorMark)) break;
+                cursorMark = nextCursorMark;
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("Could not read the " + partition.getName() + " documents from Solr", e);
+        }
+        if (exported != partition.getCount()) {
+            logger.warn(partition.getName() + ": " + exported + " entries exported, " + partition.getCount() + " expected. The index has changed during the export.");
+        }
+        entriesCount.addAndGet(exported);
+        logger.info(partition.getName() + ": " + exported + " entries exported");
+    }
+
+    /**
+     * @return the exactTypes in the index and their number of documents, biggest first so they start earlier
+     */
+    private List<FacetField.Count> getPartitions() throws IndexerException {
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery(NOT_INTERACTORS);
+        query.setRows(0);
+        query.setFacet(true);
+        query.addFacetField("exactType");
+        query.setFacetMinCount(1);
+        query.setFacetLimit(-1);
+        query.setFacetSort(FacetParams.FACET_SORT_COUNT);
+        try {
+            List<FacetField.Count> partitions = new ArrayList<>(solrClient.query(query).getFacetField("exactType").getValues());
+            if (partitions.isEmpty()) {
+                throw new IndexerException("There are no documents in Solr to export");
+            }
+            return partitions;
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("Could not retrieve the document types from Solr", e);
+        }
+    }
+
+    /**
+     * @return the release of the indexed graph database, 0 if unknown (as in a full indexing)
+     */
+    private int getRelease() throws IndexerException {
+        IndexerState state = IndexerState.read(stateFile, core);
+        if (state == null || state.getIndexerRelease() == null) {
+            logger.warn("There is no indexer state for " + core + " in " + stateFile.getAbsolutePath() + ", the ebeye.xml release will be 0");
+            return 0;
+        }
+        try {
+            return Integer.parseInt(state.getIndexerRelease());
+        } catch (NumberFormatException e) {
+            throw new IndexerException("Could not read the release of " + core + " from the indexer state", e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.CoreContainer;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Opens the Reactome core in this JVM, with the given configuration (solr-conf), so the index is written straight
+ * to a local folder instead of being sent to a running Solr.
+ * <p>
+ * A throwaway Solr home is created with the core configuration and its data dir pointing to the given folder. The
+ * Lucene index ends up in the index subfolder, ready to be copied to the data dir of the serving core. The Solr
+ * home is deleted when the client is closed.
+ * <p>
+ * A single core writes through a single IndexWriter. With partitions, the same configuration is opened as several
+ * partition cores next to the main one, each with its own IndexWriter, so they are written in parallel. They are
+ * merged into the main core (Lucene addIndexes) once everything has been indexed, and deleted.
+ */
+public class EmbeddedSolrIndex {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public static final String CORE_NAME = "reactome";
+    private static final String PARTITION_NAME = "partition-";
+    private static final String PARTITIONS_FOLDER = "partitions";
+
+    private static final String SOLR_XML = "<solr></solr>\n";
+
+    private final File dataDir;
+    private final SolrClient client;
+    private final List<String> partitionNames = new ArrayList<>();
+    private final List<SolrClient> partitions = new ArrayList<>();
+
+    private EmbeddedSolrIndex(Path home, File dataDir, int partitions) {
+        this.dataDir = dataDir;
+        Server server = new Server(home, CORE_NAME);
+        CoreContainer container = server.getCoreContainer();
+        this.client = server;
+        for (int i = 0; i < partitions; i++) {
+            String name = PARTITION_NAME + i;
+            partitionNames.add(name);
+            // The container is shut down by the main core client only
+            this.partitions.add(new EmbeddedSolrServer(container, name) {
+                @Override
+                public void close() {
+                }
+            });
+        }
+    }
+
+    /**
+     * @param confDir folder holding solrconfig.xml and schema.xml
+     * @param dataDir folder where the index is written, created if it does not exist
+     */
+    public static EmbeddedSolrIndex open(File confDir, File dataDir) throws IndexerException {
+        return open(confDir, dataDir, 0);
+    }
+
+    /**
+     * @param partitions number of partition cores written in parallel and merged at the end, 0 (or 1) for none
+     */
+    public static EmbeddedSolrIndex open(File confDir, File dataDir, int partitions) throws IndexerException {
+        if (!new File(confDir, "solrconfig.xml").isFile() || !new File(confDir, "schema.xml").isFile()) {
+            throw new IndexerException(confDir.getAbsolutePath() + " does not have the Solr core configuration (solrconfig.xml and schema.xml)");
+        }
+        if (partitions < 2) partitions = 0;
+        Path home = null;
+        try {
+            Files.createDirectories(dataDir.toPath());
+            home = Files.createTempDirectory("reactome-solr-home");
+            Files.write(home.resolve("solr.xml"), SOLR_XML.getBytes(StandardCharsets.UTF_8));
+            createCore(home, confDir, CORE_NAME, dataDir);
+
+            // Partitions of a previous build are never reused, they would be merged twice
+            Path partitionsDir = dataDir.toPath().resolve(PARTITIONS_FOLDER);
+            if (Files.exists(partitionsDir)) delete(partitionsDir);
+            for (int i = 0; i < partitions; i++) {
+                createCore(home, confDir, PARTITION_NAME + i, partitionsDir.resolve(PARTITION_NAME + i).toFile());
+            }
+
+            logger.info("Opening the embedded core " + CORE_NAME + " in " + dataDir.getAbsolutePath() + (partitions > 0 ? " with " + partitions + " partitions" : ""));
+            return new EmbeddedSolrIndex(home, dataDir, partitions);
+        } catch (IOException | SolrException e) {
+            if (home != null) delete(home);
+            throw new IndexerException("Could not open the embedded Solr core in " + dataDir.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * @return client of the main core. Closing it shuts every core down and deletes the Solr home.
+     */
+    public SolrClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return clients of the partition cores, empty if there are none
+     */
+    List<SolrClient> getPartitions() {
+        return Collections.unmodifiableList(partitions);
+    }
+
+    /**
+     * Commits the partitions, adds their segments to the main core, commits it and deletes the partitions
+     */
+    void mergePartitions() throws IndexerException {
+        if (partitions.isEmpty()) return;
+        long start = System.currentTimeMillis();
+        try {
+            for (SolrClient partition : partitions) {
+                partition.commit(true, false);
+            }
+            logger.info("Merging " + partitions.size() + " partitions into " + CORE_NAME);
+            CoreAdminRequest.mergeIndexes(CORE_NAME, null, partitionNames.toArray(new String[partitionNames.size()]), client);
+            client.commit();
+            for (String name : partitionNames) {
+                CoreAdminRequest.Unload unload = new CoreAdminRequest.Unload(true);
+                unload.setCoreName(name);
+                unload.setDeleteDataDir(true);
+                unload.process(client);
+            }
+            delete(dataDir.toPath().resolve(PARTITIONS_FOLDER));
+            partitions.clear();
+            partitionNames.clear();
+            logger.info("Partitions have been merged in " + (System.currentTimeMillis() - start) / 1000 + "s");
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("Could not merge the partitions into " + CORE_NAME, e);
+        }
+    }
+
+    private static void createCore(Path home, File confDir, String name, File coreDataDir) throws IOException {
+        Path core = home.resolve(name);
+        copy(confDir.toPath(), core.resolve("conf"));
+        String properties = "name=" + name + "\n" +
+                            "dataDir=" + coreDataDir.getAbsolutePath().replace("\\", "/") + "\n";
+        Files.write(core.resolve("core.properties"), properties.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void copy(Path from, Path to) throws IOException {
+        Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(to.resolve(from.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, to.resolve(from.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void delete(Path path) {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Could not delete " + path, e);
+        }
+    }
+
+    /**
+     * Shuts the cores down and deletes the throwaway Solr home when closed
+     */
+    private static class Server extends EmbeddedSolrServer {
+        private final Path home;
+
+        Server(Path home, String coreName) {
+            super(home, coreName);
+            this.home = home;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                delete(home);
+            }
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package org.reactome.server.tools.indexer.impl;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Local, read-only, copy of the graph rows the documents are built from (see {@link DocumentProjection}), so the
+ * documents can be built again without a running Neo4j.
+ * <p>
+ * Rows are stored by column: every column of every table (attributes, literature, references) is a section of
+ * the file with the offset of each row cell followed by the cells. Strings are dictionary-encoded, every distinct
+ * string is stored once and cells refer to it by its index. The sections are memory-mapped, so reading a row is
+ * a few absolute reads and the decoded strings are shared by all the rows.
+ * <pre>
+ * sections:  strings.offsets | strings.data | dbIds | index.dbIds | index.rows | meta | [table.column]...
+ * directory: (name | position (long) | length (long))...
+ * footer:    directory position (long) | sections (int) | MAGIC (int)
+ * </pre>
+ * Cells are a type tag followed by the value: strings (index), numbers, booleans, lists and maps (size and
+ * values). Row cells are absent (empty) when the row does not have the column.
+ * <p>
+ * Values are read back as the types returned by the projection queries, not as the ones written: integral
+ * numbers come back as Long, decimal ones as Double, arrays and collections as lists and map keys as strings.
+ * Any other type is stored as its toString().
+ */
+class GraphSnapshot implements Closeable {
+
+    private static final int MAGIC = 0x52474e53; // RGNS
+    private static final int FOOTER = Long.BYTES + 2 * Integer.BYTES;
+
+    private static final String STRINGS_OFFSETS = "strings.offsets";
+    private static final String STRINGS_DATA = "strings.data";
+    private static final String DB_IDS = "dbIds";
+    private static final String INDEX_DB_IDS = "index.dbIds";
+    private static final String INDEX_ROWS = "index.rows";
+    private static final String META = "meta";
+
+    private static final String META_RELEASE = "release";
+    private static final String META_LAST_MODIFIED = "lastModified";
+    private static final String META_CLASSES = "classes";
+    private static final String META_TABLES = "tables";
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte TRUE = 4;
+    private static final byte FALSE = 5;
+    private static final byte LIST = 6;
+    private static final byte MAP = 7;
+
+    private final File file;
+    private final ByteBuffer stringOffsets;
+    private final ByteBuffer stringData;
+    // Decoded strings, shared by all the rows. Strings are immutable, two threads decoding the same one is harmless
+    private final String[] strings;
+    private final ByteBuffer dbIds;
+    private final ByteBuffer indexDbIds;
+    private final ByteBuffer indexRows;
+    private final int rows;
+    private final Integer release;
+    private final String lastModified;
+    // class name -> first and last (exclusive) row of the class
+    private final Map<String, int[]> classes = new LinkedHashMap<>();
+    // table -> column -> cells (offsets of the rows followed by the cells)
+    private final Map<String, Map<String, ByteBuffer>> tables = new LinkedHashMap<>();
+
+    private GraphSnapshot(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            ByteBuffer footer = size < FOOTER ? null : channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER, FOOTER);
+            if (footer == null || footer.getInt(Long.BYTES + Integer.BYTES) != MAGIC) {
+                throw new IOException(file.getAbsolutePath() + " is not a graph snapshot");
+            }
+            long directoryPosition = footer.getLong(0);
+            int sections = footer.getInt(Long.BYTES);
+
+            Map<String, ByteBuffer> buffers = new HashMap<>();
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryPosition, size - FOOTER - directoryPosition);
+            for (int i = 0; i < sections; i++) {
+                byte[] name = new byte[directory.getShort() & 0xFFFF];
+                directory.get(name);
+                long position = directory.getLong();
+                long length = directory.getLong();
+                buffers.put(new String(name, StandardCharsets.UTF_8), channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+
+            stringOffsets = buffers.get(STRINGS_OFFSETS);
+            stringData = buffers.get(STRINGS_DATA);
+            strings = new String[stringOffsets.capacity() / Integer.BYTES - 1];
+            dbIds = buffers.get(DB_IDS);
+            indexDbIds = buffers.get(INDEX_DB_IDS);
+            indexRows = buffers.get(INDEX_ROWS);
+            rows = dbIds.capacity() / Long.BYTES;
+
+            Map<String, Object> meta = map(readValue(buffers.get(META), 0));
+            Object releaseValue = meta.get(META_RELEASE);
+            release = releaseValue == null ? null : ((Number) releaseValue).intValue();
+            lastModified = (String) meta.get(META_LAST_MODIFIED);
+            for (Map.Entry<String, Object> entry : map(meta.get(META_CLASSES)).entrySet()) {
+                List<?> range = (List<?>) entry.getValue();
+                classes.put(entry.getKey(), new int[]{((Number) range.get(0)).intValue(), ((Number) range.get(1)).intValue()});
+            }
+            for (Map.Entry<String, Object> entry : map(meta.get(META_TABLES)).entrySet()) {
+                Map<String, ByteBuffer> columns = new LinkedHashMap<>();
+                for (Object column : (List<?>) entry.getValue()) {
+                    columns.put((String) column, buffers.get(entry.getKey() + "." + column));
+                }
+                tables.put(entry.getKey(), columns);
+            }
+        }
+    }
+
+    /**
+     * @param file written by {@link Writer}
+     */
+    static GraphSnapshot open(File file) throws IOException {
+        return new GraphSnapshot(file);
+    }
+
+    /**
+     * @param file where the snapshot is written, temporary files are kept next to it until it is finished
+     */
+    static Writer writer(File file) throws IOException {
+        return new Writer(file);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return release of the graph the snapshot was exported from, null if it was not known
+     */
+    Integer getRelease() {
+        return release;
+    }
+
+    /**
+     * @return last modification (InstanceEdit dateTime) of the graph the snapshot was exported from
+     */
+    String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return sorted dbIds of the given class, empty if the class has not been exported
+     */
+    List<Long> getDbIds(String className) {
+        int[] range = classes.get(className);
+        if (range == null) return Collections.emptyList();
+        List<Long> rtn = new ArrayList<>(range[1] - range[0]);
+        for (int row = range[0]; row < range[1]; row++) {
+            rtn.add(dbIds.getLong(row * Long.BYTES));
+        }
+        Collections.sort(rtn);
+        return rtn;
+    }
+
+    int count(String className) {
+        int[] range = classes.get(className);
+        return range == null ? 0 : range[1] - range[0];
+    }
+
+    /**
+     * @return the row of the given table for the dbId, as returned by the projection queries, null if there is none
+     */
+    Map<String, Object> getRow(String table, long dbId) {
+        Map<String, ByteBuffer> columns = tables.get(table);
+        int row = find(dbId);
+        if (columns == null || row < 0) return null;
+
+        Map<String, Object> rtn = new HashMap<>();
+        for (Map.Entry<String, ByteBuffer> column : columns.entrySet()) {
+            ByteBuffer cells = column.getValue();
+            int from = cells.getInt(row * Integer.BYTES);
+            int to = cells.getInt((row + 1) * Integer.BYTES);
+            if (from < to) rtn.put(column.getKey(), readValue(cells, (rows + 1) * Integer.BYTES + from));
+        }
+        return rtn.isEmpty() ? null : rtn;
+    }
+
+    /**
+     * @return row of the dbId, negative if it is not in the snapshot
+     */
+    private int find(long dbId) {
+        int low = 0;
+        int high = rows - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = indexDbIds.getLong(mid * Long.BYTES);
+            if (value < dbId) {
+                low = mid + 1;
+            } else if (value > dbId) {
+                high = mid - 1;
+            } else {
+                return indexRows.getInt(mid * Integer.BYTES);
+            }
+        }
+        return -1;
+    }
+
+    // Only absolute reads, the buffers are shared by all the threads
+    private Object readValue(ByteBuffer buffer, int position) {
+        return new Cursor(buffer, position).value();
+    }
+
+    private String string(int index) {
+        String rtn = strings[index];
+        if (rtn == null) {
+            int from = stringOffsets.getInt(index * Integer.BYTES);
+            int to = stringOffsets.getInt((index + 1) * Integer.BYTES);
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = stringData.get(from + i);
+            }
+            strings[index] = rtn = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return rtn;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> map(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+    }
+
+    @Override
+    public void close() {
+        // The mappings are released with the buffers, the file is kept to be indexed again
+    }
+
+    /**
+     * Decodes the cells of a column from a given position
+     */
+    private class Cursor {
+        private final ByteBuffer buffer;
+        private int position;
+
+        Cursor(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        Object value() {
+            byte type = buffer.get(position++);
+            switch (type) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return string(varInt());
+                case LONG:
+                    long longValue = buffer.getLong(position);
+                    position += Long.BYTES;
+                    return longValue;
+                case DOUBLE:
+                    double doubleValue = buffer.getDouble(position);
+                    position += Double.BYTES;
+                    return doubleValue;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case LIST:
+                    int size = varInt();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(value());
+                    }
+                    return list;
+                case MAP:
+                    int entries = varInt();
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < entries; i++) {
+                        String key = string(varInt());
+                        map.put(key, value());
+                    }
+                    return map;
+                default:
+                    throw new IllegalStateException("Unknown value type " + type + " in " + file.getAbsolutePath());
+            }
+        }
+
+        private int varInt() {
+            int rtn = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get(position++);
+                rtn |= (b & 0x7F) << shift;
+                if (b >= 0) return rtn;
+            }
+        }
+    }
+
+    /**
+     * Writes the rows of the exported dbIds, one class after the other. Every column is written to its own
+     * temporary file and the snapshot is assembled from them when it is finished.
+     */
+    static class Writer implements Closeable {
+        private final File file;
+        private final File folder;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final DataOutputStream stringOffsets;
+        private final DataOutputStream stringData;
+        private final DataOutputStream dbIds;
+        private final Map<String, Map<String, Column>> tables = new LinkedHashMap<>();
+        private final Map<String, Object> classes = new LinkedHashMap<>();
+        private long[] rowDbIds = new long[1024];
+        private int rows = 0;
+        private int stringPosition = 0;
+        private String currentClass = null;
+        private int classStart = 0;
+        private Integer release;
+        private String lastModified;
+
+        private Writer(File file) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create the folder " + parent.getAbsolutePath());
+            }
+            this.file = file;
+            this.folder = Files.createTempDirectory(parent.toPath(), file.getName() + ".").toFile();
+            this.stringOffsets = open(STRINGS_OFFSETS);
+            this.stringData = open(STRINGS_DATA);
+            this.dbIds = open(DB_IDS);
+            stringOffsets.writeInt(0);
+        }
+
+        void setRelease(Integer release) {
+            this.release = release;
+        }
+
+        void setLastModified(String lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @param className class being exported, the rows of a class have to be added one after the other
+         * @param dbId      not added before
+         * @param rows      row of each table (attributes, literature, references), tables without row are skipped
+         */
+        void add(String className, long dbId, Map<String, Map<String, Object>> rows) throws IOException {
+            if (!className.equals(currentClass)) {
+                if (classes.containsKey(className)) {
+                    throw new IllegalArgumentException("The rows of " + className + " have to be added one after the other");
+                }
+                endClass();
+                currentClass = className;
+                classStart = this.rows;
+            }
+            if (this.rows == rowDbIds.length) rowDbIds = Arrays.copyOf(rowDbIds, this.rows * 2);
+            rowDbIds[this.rows] = dbId;
+            dbIds.writeLong(dbId);
+
+            for (Map.Entry<String, Map<String, Object>> table : rows.entrySet()) {
+                if (table.getValue() == null) continue;
+                Map<String, Column> columns = tables.computeIfAbsent(table.getKey(), t -> new LinkedHashMap<>());
+                for (Map.Entry<String, Object> cell : table.getValue().entrySet()) {
+                    Column column = columns.get(cell.getKey());
+                    if (column == null) {
+                        String name = table.getKey() + "." + cell.getKey();
+                        column = new Column(name, open(name));
+                        columns.put(cell.getKey(), column);
+                    }
+                    column.write(this.rows, cell.getValue());
+                }
+            }
+            this.rows++;
+        }
+
+        /**
+         * Assembles the snapshot file from the temporary ones
+         */
+        void finish() throws IOException {
+            endClass();
+            dbIds.close();
+
+            Integer[] order = new Integer[rows];
+            for (int i = 0; i < rows; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> rowDbIds[i]));
+            try (DataOutputStream sortedDbIds = open(INDEX_DB_IDS); DataOutputStream sortedRows = open(INDEX_ROWS)) {
+                for (int i = 0; i < rows; i++) {
+                    if (i > 0 && rowDbIds[order[i]] == rowDbIds[order[i - 1]]) {
+                        throw new IllegalStateException("dbId " + rowDbIds[order[i]] + " has been added twice");
+                    }
+                    sortedDbIds.writeLong(rowDbIds[order[i]]);
+                    sortedRows.writeInt(order[i]);
+                }
+            }
+
+            Map<String, Object> tableColumns = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, Column>> table : tables.entrySet()) {
+                tableColumns.put(table.getKey(), new ArrayList<>(table.getValue().keySet()));
+                for (Column column : table.getValue().values()) {
+                    column.close(rows);
+                }
+            }
+            Map<String, Object> meta = new LinkedHashMap<>();
+            meta.put(META_RELEASE, release);
+            meta.put(META_LAST_MODIFIED, lastModified);
+            meta.put(META_CLASSES, classes);
+            meta.put(META_TABLES, tableColumns);
+            try (DataOutputStream out = open(META)) {
+                writeValue(out, meta);
+            }
+            // The meta strings are added to the dictionary as well, it is closed last
+            stringOffsets.close();
+            stringData.close();
+
+            List<String> sections = new ArrayList<>(Arrays.asList(STRINGS_OFFSETS, STRINGS_DATA, DB_IDS, INDEX_DB_IDS, INDEX_ROWS, META));
+            for (Map.Entry<String, Map<String, Column>> table : tables.entrySet()) {
+                for (String column : table.getValue().keySet()) {
+                    sections.add(table.getKey() + "." + column);
+                }
+            }
+            File tmp = new File(folder, file.getName());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+                long position = 0;
+                long[] positions = new long[sections.size()];
+                long[] lengths = new long[sections.size()];
+                for (int i = 0; i < sections.size(); i++) {
+                    File section = new File(folder, sections.get(i));
+                    positions[i] = position;
+                    lengths[i] = Files.copy(section.toPath(), out);
+                    position += lengths[i];
+                    if (!section.delete()) section.deleteOnExit();
+                }
+                for (int i = 0; i < sections.size(); i++) {
+                    byte[] name = sections.get(i).getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(name.length);
+                    out.write(name);
+                    out.writeLong(positions[i]);
+                    out.writeLong(lengths[i]);
+                }
+                out.writeLong(position);
+                out.writeInt(sections.size());
+                out.writeInt(MAGIC);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private void endClass() {
+            if (currentClass != null) classes.put(currentClass, Arrays.asList((long) classStart, (long) rows));
+            currentClass = null;
+        }
+
+        private int stringIndex(String value) throws IOException {
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if ((long) stringPosition + bytes.length > Integer.MAX_VALUE) {
+                    throw new IOException(file.getAbsolutePath() + " has too many strings for a graph snapshot");
+                }
+                stringData.write(bytes);
+                stringPosition += bytes.length;
+                stringOffsets.writeInt(stringPosition);
+                index = dictionary.size();
+                dictionary.put(value, index);
+            }
+            return index;
+        }
+
+        private void writeValue(DataOutputStream out, Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeVarInt(out, stringIndex((String) value));
+            } else if (value instanceof Double || value instanceof Float) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                out.writeByte(LONG);
+                out.writeLong(((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.writeByte(MAP);
+                writeVarInt(out, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeVarInt(out, stringIndex(entry.getKey().toString()));
+                    writeValue(out, entry.getValue());
+                }
+            } else if (value instanceof Collection || value instanceof Object[]) {
+                Collection<?> collection = value instanceof Object[] ? Arrays.asList((Object[]) value) : (Collection<?>) value;
+                out.writeByte(LIST);
+                writeVarInt(out, collection.size());
+                for (Object o : collection) {
+                    writeValue(out, o);
+                }
+            } else {
+                // See the class comment, the projection queries only return the types above
+                writeValue(out, value.toString());
+            }
+        }
+
+        private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        private DataOutputStream open(String name) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(folder, name)), 64 * 1024));
+        }
+
+        /**
+         * Deletes the temporary files, and the unfinished snapshot if {@link #finish()} has not been called
+         */
+        @Override
+        public void close() {
+            for (Closeable stream : Arrays.asList(stringOffsets, stringData, dbIds)) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // already closed or not needed anymore
+                }
+            }
+            for (Map<String, Column> columns : tables.values()) {
+                for (Column column : columns.values()) column.discard();
+            }
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    if (!f.delete()) f.deleteOnExit();
+                }
+            }
+            if (!folder.delete()) folder.deleteOnExit();
+        }
+
+        /**
+         * Cells of a column: the offset of every row is kept in memory and prepended when the column is closed
+         */
+        private class Column {
+            private final String name;
+            private final DataOutputStream out;
+            private int[] offsets = new int[1024];
+            private int rows = 0;
+
+            Column(String name, DataOutputStream out) {
+                this.name = name;
+                this.out = out;
+            }
+
+            void write(int row, Object value) throws IOException {
+                fill(row);
+                writeValue(out, value);
+                // DataOutputStream stops counting at Integer.MAX_VALUE
+                if (out.size() == Integer.MAX_VALUE) throw new IOException(file.getAbsolutePath() + " has a column too big for a graph snapshot");
+                fill(row + 1);
+            }
+
+            /**
+             * Rows up to the given one (exclusive) without cell in this column
+             */
+            private void fill(int row) {
+                if (row + 1 > offsets.length) offsets = Arrays.copyOf(offsets, Math.max(row + 1, offsets.length * 2));
+                while (rows < row) {
+                    offsets[++rows] = out.size();
+                }
+            }
+
+            void close(int total) throws IOException {
+                fill(total);
+                out.close();
+                // The offsets go in front of the cells, in a file of their own that replaces the cells file
+                File cells = new File(folder, name);
+                File withOffsets = new File(folder, name + ".offsets");
+                try (DataOutputStream o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(withOffsets), 64 * 1024))) {
+                    for (int i = 0; i <= total; i++) o.writeInt(offsets[i]);
+                    Files.copy(cells.toPath(), o);
+                }
+                Files.move(withOffsets.toPath(), cells.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                offsets = null;
+            }
+
+            void discard() {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // not needed anymore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.model.ReactomeSummary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link AccessionStore} kept in the heap
+ */
+class HeapAccessionStore implements AccessionStore {
+
+    private final List<String> accessions;
+    private final Map<String, ReactomeSummary> summaries;
+
+    private HeapAccessionStore(List<String> accessions, Map<String, ReactomeSummary> summaries) {
+        this.accessions = accessions;
+        this.summaries = summaries;
+    }
+
+    @Override
+    public int size() {
+        return accessions.size();
+    }
+
+    @Override
+    public String getAccession(int index) {
+        return accessions.get(index);
+    }
+
+    @Override
+    public boolean contains(String accession) {
+        return summaries.containsKey(accession);
+    }
+
+    @Override
+    public ReactomeSummary get(String accession) {
+        return summaries.get(accession);
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    static class Builder implements AccessionStore.Builder {
+        private final List<String> accessions = new ArrayList<>();
+        private final Map<String, ReactomeSummary> summaries = new HashMap<>();
+
+        @Override
+        public void add(String accession, ReactomeSummary summary) {
+            if (!accessions.isEmpty() && accessions.get(accessions.size() - 1).compareTo(accession) >= 0) {
+                throw new IllegalArgumentException("Accessions have to be added in ascending order: " + accession);
+            }
+            accessions.add(accession);
+            summaries.put(accession, summary);
+        }
+
+        @Override
+        public AccessionStore build() {
+            return new HeapAccessionStore(accessions, summaries);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.reactome.server.tools.indexer.model.CrossReference;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Converts an {@link IndexDocument} into a {@link SolrInputDocument} without the reflective SolrJ
+ * DocumentObjectBinder. Every @Field of IndexDocument is listed here, so a new field has to be added to
+ * both classes. Null and empty values are not sent, Solr would ignore them anyway.
+ * <p>
+ * The taxIds and cross references written to the ebeye.xml are not searched, but they are stored as well so the
+ * ebeye.xml can be exported from the index. {@link #toIndexDocument(SolrDocument)} reads back what the export needs.
+ */
+final class IndexDocumentConverter {
+
+    // IndexDocument has 50 fields, a bigger map avoids rehashing
+    private static final int INITIAL_FIELDS = 64;
+    private static final char CROSS_REFERENCE_SEPARATOR = '\t';
+
+    /**
+     * Stored fields read by {@link #toIndexDocument(SolrDocument)}
+     */
+    static final String[] EBEYE_FIELDS = {
+            "dbId", "stId", "oldStId", "name", "type", "summation", "inferredSummation", "species", "relatedSpecies",
+            "taxId", "diseaseId", "diseaseName", "diseaseSynonyms", "synonyms", "keywords", "regulator", "regulatedEntity",
+            "compartmentName", "compartmentAccession", "goBiologicalProcessName", "goBiologicalProcessAccessions",
+            "goCellularComponentAccessions", "goMolecularFunctionName", "goMolecularFunctionAccession",
+            "literatureReferenceTitle", "literatureReferencePubMedId", "referenceName", "referenceIdentifiers",
+            "databaseName", "referenceSynonyms", "referenceGeneNames", "referenceOtherIdentifier", "ebeyeCrossReferences"
+    };
+
+    private IndexDocumentConverter() {
+    }
+
+    static SolrInputDocument toSolrInputDocument(IndexDocument indexDocument) {
+        SolrInputDocument document = new SolrInputDocument(new LinkedHashMap<>(INITIAL_FIELDS));
+        add(document, "dbId", indexDocument.getDbId());
+        add(document, "stId", indexDocument.getStId());
+        add(document, "oldStId", indexDocument.getOldStId());
+        add(document, "name", indexDocument.getName());
+        add(document, "type", indexDocument.getType());
+        add(document, "exactType", indexDocument.getExactType());
+        add(document, "isDisease", indexDocument.getIsDisease());
+        add(document, "diseaseId", indexDocument.getDiseaseId());
+        add(document, "diseaseName", indexDocument.getDiseaseName());
+        add(document, "diseaseSynonyms", indexDocument.getDiseaseSynonyms());
+        add(document, "species", indexDocument.getSpecies());
+        add(document, "relatedSpecies", indexDocument.getRelatedSpecies());
+        add(document, "synonyms", indexDocument.getSynonyms());
+        add(document, "summation", indexDocument.getSummation());
+        add(document, "inferredSummation", indexDocument.getInferredSummation());
+        add(document, "regulatorId", indexDocument.getRegulatorId());
+        add(document, "regulatedEntityId", indexDocument.getRegulatedEntityId());
+        add(document, "regulator", indexDocument.getRegulator());
+        add(document, "regulatedEntity", indexDocument.getRegulatedEntity());
+        add(document, "compartmentName", indexDocument.getCompartmentName());
+        add(document, "compartmentAccession", indexDocument.getCompartmentAccession());
+        add(document, "literatureReferenceTitle", indexDocument.getLiteratureReferenceTitle());
+        add(document, "literatureReferenceAuthor", indexDocument.getLiteratureReferenceAuthor());
+        add(document, "literatureReferencePubMedId", indexDocument.getLiteratureReferencePubMedId());
+        add(document, "literatureReferenceIsbn", indexDocument.getLiteratureReferenceIsbn());
+        add(document, "goBiologicalProcessName", indexDocument.getGoBiologicalProcessName());
+        add(document, "goBiologicalProcessAccessions", indexDocument.getGoBiologicalProcessAccessions());
+        add(document, "goCellularComponentName", indexDocument.getGoCellularComponentName());
+        add(document, "goCellularComponentAccessions", indexDocument.getGoCellularComponentAccessions());
+        add(document, "goMolecularFunctionName", indexDocument.getGoMolecularFunctionName());
+        add(document, "goMolecularFunctionAccession", indexDocument.getGoMolecularFunctionAccession());
+        add(document, "keywords", indexDocument.getKeywords());
+        add(document, "crossReferences", indexDocument.getCrossReferences());
+        add(document, "referenceCrossReferences", indexDocument.getReferenceCrossReferences());
+        add(document, "referenceName", indexDocument.getReferenceName());
+        add(document, "referenceIdentifiers", indexDocument.getReferenceIdentifiers());
+        add(document, "referenceURL", indexDocument.getReferenceURL());
+        add(document, "databaseName", indexDocument.getDatabaseName());
+        add(document, "referenceSynonyms", indexDocument.getReferenceSynonyms());
+        add(document, "referenceOtherIdentifier", indexDocument.getReferenceOtherIdentifier());
+        add(document, "referenceSecondaryIdentifier", indexDocument.getReferenceSecondaryIdentifier());
+        add(document, "referenceGeneNames", indexDocument.getReferenceGeneNames());
+        add(document, "reactomeInteractorIds", indexDocument.getReactomeInteractorIds());
+        add(document, "interactionsIds", indexDocument.getInteractionsIds());
+        add(document, "scores", indexDocument.getScores());
+        add(document, "interactorAccessions", indexDocument.getInteractorAccessions());
+        add(document, "reactomeInteractorNames", indexDocument.getReactomeInteractorNames());
+        add(document, "author", indexDocument.getAuthor());
+        add(document, "authorOrcid", indexDocument.getAuthorOrcid());
+        add(document, "fireworksSpecies", indexDocument.getFireworksSpecies());
+        add(document, "taxId", indexDocument.getTaxId());
+        add(document, "ebeyeCrossReferences", toStrings(indexDocument.getAllCrossReferences()));
+        return document;
+    }
+
+    /**
+     * @return a document holding the {@link #EBEYE_FIELDS} of the given Solr document
+     */
+    static IndexDocument toIndexDocument(SolrDocument document) {
+        IndexDocument indexDocument = new IndexDocument();
+        indexDocument.setDbId(string(document, "dbId"));
+        indexDocument.setStId(string(document, "stId"));
+        indexDocument.setOldStId(string(document, "oldStId"));
+        indexDocument.setName(string(document, "name"));
+        indexDocument.setType(string(document, "type"));
+        indexDocument.setSummation(string(document, "summation"));
+        indexDocument.setInferredSummation(string(document, "inferredSummation"));
+        indexDocument.setSpecies(strings(document, "species"));
+        indexDocument.setRelatedSpecies(strings(document, "relatedSpecies"));
+        indexDocument.setTaxId(strings(document, "taxId"));
+        indexDocument.setDiseaseId(strings(document, "diseaseId"));
+        indexDocument.setDiseaseName(strings(document, "diseaseName"));
+        indexDocument.setDiseaseSynonyms(strings(document, "diseaseSynonyms"));
+        indexDocument.setSynonyms(strings(document, "synonyms"));
+        indexDocument.setKeywords(strings(document, "keywords"));
+        indexDocument.setRegulator(string(document, "regulator"));
+        indexDocument.setRegulatedEntity(string(document, "regulatedEntity"));
+        indexDocument.setCompartmentName(strings(document, "compartmentName"));
+        indexDocument.setCompartmentAccession(strings(document, "compartmentAccession"));
+        indexDocument.setGoBiologicalProcessName(string(document, "goBiologicalProcessName"));
+        indexDocument.setGoBiologicalProcessAccessions(strings(document, "goBiologicalProcessAccessions"));
+        indexDocument.setGoCellularComponentAccessions(strings(document, "goCellularComponentAccessions"));
+        indexDocument.setGoMolecularFunctionName(strings(document, "goMolecularFunctionName"));
+        indexDocument.setGoMolecularFunctionAccession(strings(document, "goMolecularFunctionAccession"));
+        indexDocument.setLiteratureReferenceTitle(strings(document, "literatureReferenceTitle"));
+        indexDocument.setLiteratureReferencePubMedId(strings(document, "literatureReferencePubMedId"));
+        indexDocument.setReferenceName(string(document, "referenceName"));
+        indexDocument.setReferenceIdentifiers(strings(document, "referenceIdentifiers"));
+        indexDocument.setDatabaseName(string(document, "databaseName"));
+        indexDocument.setReferenceSynonyms(strings(document, "referenceSynonyms"));
+        indexDocument.setReferenceGeneNames(strings(document, "referenceGeneNames"));
+        indexDocument.setReferenceOtherIdentifier(strings(document, "referenceOtherIdentifier"));
+        indexDocument.setAllCrossReferences(toCrossReferences(strings(document, "ebeyeCrossReferences")));
+        return indexDocument;
+    }
+
+    private static void add(SolrInputDocument document, String name, Object value) {
+        if (value == null) return;
+        if (value instanceof Collection && ((Collection<?>) value).isEmpty()) return;
+        document.setField(name, value);
+    }
+
+    private static String string(SolrDocument document, String name) {
+        Object value = document.getFirstValue(name);
+        return value == null ? null : value.toString();
+    }
+
+    private static List<String> strings(SolrDocument document, String name) {
+        Collection<Object> values = document.getFieldValues(name);
+        if (values == null) return null;
+        List<String> strings = new ArrayList<>(values.size());
+        for (Object value : values) {
+            strings.add(value.toString());
+        }
+        return strings;
+    }
+
+    private static List<String> toStrings(List<CrossReference> crossReferences) {
+        if (crossReferences == null) return null;
+        List<String> strings = new ArrayList<>(crossReferences.size());
+        for (CrossReference crossReference : crossReferences) {
+            strings.add(crossReference.getDbName() + CROSS_REFERENCE_SEPARATOR + crossReference.getId());
+        }
+        return strings;
+    }
+
+    private static List<CrossReference> toCrossReferences(List<String> strings) {
+        if (strings == null) return null;
+        List<CrossReference> crossReferences = new ArrayList<>(strings.size());
+        for (String string : strings) {
+            int separator = string.indexOf(CROSS_REFERENCE_SEPARATOR);
+            CrossReference crossReference = new CrossReference();
+            crossReference.setDbName(string.substring(0, separator));
+            crossReference.setId(string.substring(separator + 1));
+            crossReferences.add(crossReference);
+        }
+        return crossReferences;
+    }
+}
@@ -1,30 +1,40 @@
 package org.reactome.server.tools.indexer.impl;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.HttpSolrClient;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.UpdateParams;
+import org.neo4j.ogm.session.Session;
 import org.reactome.server.graph.domain.model.*;
-import org.reactome.server.graph.domain.result.SimpleDatabaseObject;
 import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
 import org.reactome.server.graph.service.GeneralService;
 import org.reactome.server.graph.service.SchemaService;
 import org.reactome.server.interactors.database.InteractorsDatabase;
 import org.reactome.server.interactors.exception.InvalidInteractionResourceException;
 import org.reactome.server.interactors.model.Interaction;
-import org.reactome.server.interactors.model.InteractionDetails;
 import org.reactome.server.interactors.model.Interactor;
 import org.reactome.server.interactors.service.InteractionService;
 import org.reactome.server.interactors.service.InteractorService;
 import org.reactome.server.interactors.util.InteractorConstant;
 import org.reactome.server.interactors.util.Toolbox;
+import org.reactome.server.tools.indexer.config.IndexerNeo4jConfig;
 import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.metrics.Histogram;
+import org.reactome.server.tools.indexer.metrics.IndexerMetrics;
 import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.model.IndexerState;
 import org.reactome.server.tools.indexer.model.InteractorSummary;
 import org.reactome.server.tools.indexer.model.ReactomeSummary;
+import org.reactome.server.tools.indexer.taxonomy.TaxonomyResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,12 +42,18 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.file.Files;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class is responsible for establishing connection to Solr
@@ -52,154 +68,623 @@ import java.util.*;
 public class Indexer {
     private static final Logger logger = LoggerFactory.getLogger("importLogger");
 
-    private static final String EBEYE_NAME = "Reactome";
-    private static final String EBEYE_DESCRIPTION = "Reactome is a free, open-source, curated and peer reviewed pathway " +
+    private static final int ADD_INTERVAL = 1000;
+    private static final int NEO4J_CACHE_CLEAN_INTERVAL = 30000;
+    private static final int CURSOR_ROWS = 10000;
+    private static final int ACCESSION_BATCH_SIZE = 1000;
+    private static final double SWAP_MIN_RATIO = 0.9;
+
+    // Solr is committed and the checkpoint saved every CHECKPOINT_INTERVAL chunks of ADD_INTERVAL dbIds
+    private static final int CHECKPOINT_INTERVAL = 20;
+    private static final File CHECKPOINT_FILE = new File("indexer-checkpoint.json");
+    // Metrics of the run, written at the end of every indexing (successful or not)
+    private static final String REPORT_FILE = "indexer-report-%s.json";
+
+    // Maximum number of batches waiting in each pipeline queue, per graph worker
+    private static final int PIPELINE_CAPACITY = 2;
+
+    // Classes indexed from the graph, in indexing order
+    private static final List<Class<? extends DatabaseObject>> INDEXED_CLASSES = Arrays.asList(PhysicalEntity.class, Event.class, Regulation.class);
+
+    private static final String NO_SPECIES = "Entries without species";
+
+    // Paths from an indexed object to the objects whose data is copied into its document, as read by the
+    // DocumentBuilder and the DocumentProjection. The object is modified when any object at the end of a path is
+    private static final List<String> DOCUMENT_PATHS = Arrays.asList(
+            "",
+            "-->(:DatabaseObject)",
+            "-[:catalystActivity]->(:CatalystActivity)-[:activity|physicalEntity]->(:DatabaseObject)",
+            "-[:literatureReference]->(:Publication)-[:author]->(:Person)",
+            "-[:authored|reviewed]->(:InstanceEdit)-[:author]->(:Person)",
+            "-[:referenceEntity]->(:ReferenceEntity)-[:referenceDatabase|crossReference]->(:DatabaseObject)",
+            "-[:referenceEntity]->(:ReferenceEntity)-[:crossReference]->(:DatabaseIdentifier)-[:referenceDatabase]->(:ReferenceDatabase)",
+            "-[:regulatedEntity|regulator]->(:DatabaseObject)-[:physicalEntity]->(:PhysicalEntity)");
+
+    static final String EBEYE_NAME = "Reactome";
+    static final String EBEYE_DESCRIPTION = "Reactome is a free, open-source, curated and peer reviewed pathway " +
             "database. Our goal is to provide intuitive bioinformatics tools for the visualization, interpretation and " +
             "analysis of pathway knowledge to support basic research, genome analysis, modeling, systems biology and " +
             "education.";
 
-    // Collection that holds accessions from IntAct that are not in Reactome Data.
-    // This collection will be used to keep interactions to those accession not in Reactome.
-    private static final Set<String> accessionsNotInReactome = new HashSet<>();
     private static InteractorService interactorService;
     private static InteractionService interactionService;
+    // Read straight with SQL by InteractorRows when its schema is supported
+    private InteractorsDatabase interactorsDatabase;
 
+    // Accessions from IntAct that are not in Reactome Data.
+    // This collection will be used to keep interactions to those accession not in Reactome.
+    private AccessionStore accessionsNotInReactome;
     // Reactome Ids and names (ReactomeSummary) and their reference Entity accession identifier
-    private final Map<String, ReactomeSummary> accessionMap = new HashMap<>();
+    private AccessionStore accessionMap;
+    // Folder where the accession stores are memory-mapped, null to keep them in the heap
+    private File accessionStoreFolder = null;
     private final Map<Integer, String> taxonomyMap = new HashMap<>();
+    private TaxonomyResolver taxonomyResolver;
 
     private SchemaService schemaService;
     private GeneralService generalService;
     private AdvancedDatabaseObjectService advancedDatabaseObjectService;
+    private Session session;
+    private IndexerNeo4jConfig neo4jConfig;
 
     // Creating SolR Document querying the Graph in Transactional execution
     private DocumentBuilder documentBuilder;
+    // Creating SolR Documents for batches of dbIds with a few Cypher queries
+    private DocumentProjection documentProjection;
+    // Rows of the documents read from a local snapshot instead of the graph, null to query the graph
+    private GraphSnapshot snapshot;
 
     private SolrClient solrClient;
-    private Marshaller marshaller;
+    private DocumentSender solrSender;
+    // SolrCloud: documents are sent to the leader of their shard, through the clients created by this function
+    private Function<String, SolrClient> shardClients;
+    // Embedded: documents are written to its partitions in parallel, merged into the main core at the end
+    private EmbeddedSolrIndex embeddedIndex;
+    private IndexerMetrics metrics = new IndexerMetrics();
+    private int solrBatchMinBytes = 256 * 1024;
+    private int solrBatchMaxBytes = 8 * 1024 * 1024;
+    private File deadLetterFile = new File("indexer-rejected.jsonl");
+    // State of the previous indexing of each core, kept out of the index
+    private File stateFile = new File("indexer-state.json");
+    private String stateCore = EmbeddedSolrIndex.CORE_NAME;
+    // Blue/green: the index is built in the shadow core (solrClient) and swapped with the live one at the end
+    private SolrClient adminClient;
+    private String liveCore;
+    private String shadowCore;
+
+    // Segments left by the final optimize, 0 to leave the segments as the merge policy keeps them
+    private int maxSegments = 0;
 
     private Boolean xml = false;
+    private boolean xmlGzip = false;
+    private int threads = 1;
+    private int solrThreads = 2;
+    private boolean projection = false;
+    private boolean delta = false;
+    private boolean resume = false;
     private long total;
 
     public int index() throws IndexerException {
         long start = System.currentTimeMillis();
         int entriesCount = 0;
+        boolean success = false;
+        String mode = "full";
 
-        totalCount();
-
+        metrics = new IndexerMetrics();
+        metrics.register();
         try {
-            if (xml) {
-                int releaseNumber = 0;
-                try {
-                    releaseNumber = generalService.getDBVersion();
-                } catch (Exception e) {
-                    logger.error("An error occurred when trying to retrieve the release number from the database.");
+            // The dead letter belongs to the run, a resumed run keeps adding to it
+            if (!resume) Files.deleteIfExists(deadLetterFile.toPath());
+            solrSender = createSolrSender();
+            IndexerState previousState = delta ? readIndexerState() : null;
+            if (delta && previousState == null) {
+                logger.warn("There is no indexer state for " + getStateCore() + ". Running the full indexing.");
+            }
+
+            IndexerCheckpoint checkpoint = null;
+            if (previousState != null) {
+                if (resume) {
+                    logger.warn("A delta indexing is not checkpointed, running it again already skips what is unchanged");
+                }
+                mode = "delta";
+                entriesCount = indexDelta(previousState);
+            } else {
+                if (resume) {
+                    checkpoint = IndexerCheckpoint.resume(CHECKPOINT_FILE, getReleaseNumber(), ADD_INTERVAL, CHECKPOINT_INTERVAL);
+                } else if (embeddedIndex != null && !embeddedIndex.getPartitions().isEmpty()) {
+                    // Partitions are only committed into the main core when merged at the end and deleted when the
+                    // index is opened again, a saved checkpoint would claim chunks that are lost with them
+                    checkpoint = IndexerCheckpoint.startUnsaved(CHECKPOINT_FILE, getReleaseNumber(), ADD_INTERVAL);
+                } else {
+                    checkpoint = IndexerCheckpoint.start(CHECKPOINT_FILE, getReleaseNumber(), ADD_INTERVAL, CHECKPOINT_INTERVAL);
+                }
+                if (checkpoint.isResumed()) mode = "resumed";
+                entriesCount = indexAll(checkpoint);
+            }
+
+            if (embeddedIndex != null) embeddedIndex.mergePartitions();
+            if (maxSegments > 0) optimizeSolrServer();
+            saveIndexerState();
+            if (shadowCore != null) {
+                verifyShadowCore();
+                swapCores();
+            }
+            if (checkpoint != null) checkpoint.delete();
+            logger.info("Entries total: " + entriesCount);
+            if (solrSender.getRejected() > 0) {
+                logger.warn(solrSender.getRejected() + " documents have been rejected by Solr, see " + deadLetterFile.getAbsolutePath());
+            }
+
+            long end = System.currentTimeMillis() - start;
+            logger.info("Full indexing took " + end + " .ms");
+
+            System.out.println("\nData Import finished with " + entriesCount + " entries imported.");
+
+            success = true;
+            return entriesCount;
+        } catch (Exception e) {
+            logger.error("An error occurred during the data import", e);
+            e.printStackTrace();
+            throw new IndexerException(e);
+        } finally {
+            closeSolrServer();
+            writeReport(mode, entriesCount, success);
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Exports the rows the documents are built from to a local {@link GraphSnapshot}, so later indexings do not
+     * need the graph to build them (see {@link #setSnapshot(File)}). Rows are fetched in chunks of
+     * {@link #ADD_INTERVAL} dbIds with the projection queries.
+     *
+     * @param file where the snapshot is written
+     * @return total of exported items
+     */
+    public int exportSnapshot(File file) throws IndexerException {
+        long start = System.currentTimeMillis();
+        int entriesCount = 0;
+        logger.info("Exporting the graph snapshot to " + file.getAbsolutePath());
+        try (GraphSnapshot.Writer writer = GraphSnapshot.writer(file)) {
+            writer.setRelease(getReleaseNumber());
+            writer.setLastModified(getLastModified());
+            totalCount();
+            for (Class<? extends DatabaseObject> clazz : INDEXED_CLASSES) {
+                List<Long> dbIds = getDbIds(clazz);
+                logger.info("[" + dbIds.size() + "] " + clazz.getSimpleName() + " to be exported");
+                for (int from = 0; from < dbIds.size(); from += ADD_INTERVAL) {
+                    List<Long> chunkIds = dbIds.subList(from, Math.min(from + ADD_INTERVAL, dbIds.size()));
+                    int exported = documentProjection.export(clazz.getSimpleName(), documentProjection.fetch(chunkIds), writer);
+                    if (exported < chunkIds.size()) {
+                        logger.warn((chunkIds.size() - exported) + " " + clazz.getSimpleName() + " could not be found in the graph");
+                    }
+                    entriesCount += exported;
+                    updateProgressBar(entriesCount);
+                    if ((from / ADD_INTERVAL + 1) % (NEO4J_CACHE_CLEAN_INTERVAL / ADD_INTERVAL) == 0) cleanNeo4jCache();
                 }
-                marshaller.writeHeader(releaseNumber);
+                cleanNeo4jCache();
             }
+            writer.finish();
+        } catch (IOException e) {
+            throw new IndexerException("Could not export the graph snapshot to " + file.getAbsolutePath(), e);
+        }
+        logger.info(entriesCount + " entries exported to the graph snapshot in " + (System.currentTimeMillis() - start) / 1000 + "s");
+        return entriesCount;
+    }
+
+    private void writeReport(String mode, int entriesCount, boolean success) {
+        Integer release = getReleaseNumber();
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("release", release);
+        run.put("mode", mode);
+        run.put("success", success);
+        run.put("entries", entriesCount);
+        run.put("threads", threads);
+        run.put("solrThreads", solrThreads);
+        run.put("projection", projection);
+        run.put("snapshot", snapshot != null ? snapshot.getFile().getAbsolutePath() : null);
+        run.put("xml", xml);
+        run.put("maxSegments", maxSegments);
+        run.put("partitions", embeddedIndex != null ? embeddedIndex.getPartitions().size() : 0);
+        run.put("rejected", solrSender != null ? solrSender.getRejected() : 0);
+        metrics.writeReport(new File(String.format(REPORT_FILE, release != null ? release : "unknown")), run);
+    }
+
+    /**
+     * Cleans the Solr index and indexes everything from scratch. When the checkpoint is resumed the index is not
+     * cleaned and only what has not been committed yet is indexed.
+     *
+     * @return total of indexed items
+     */
+    private int indexAll(IndexerCheckpoint checkpoint) throws IndexerException {
+        int entriesCount = checkpoint.getEntriesCount();
+
+        totalCount();
+
+        // The ebeye.xml needs every entry, a resumed indexing cannot write it
+        Marshaller xmlMarshaller = xml && !checkpoint.isResumed() ? createMarshaller() : null;
+        if (xml && checkpoint.isResumed()) {
+            logger.warn("The ebeye.xml file needs every entry and is not written when resuming");
+        }
 
+        if (xmlMarshaller != null) {
+            Integer releaseNumber = getReleaseNumber();
+            xmlMarshaller.writeHeader(releaseNumber == null ? 0 : releaseNumber);
+        }
+
+        if (!checkpoint.isResumed()) {
             cleanSolrIndex();
+        }
 
-            entriesCount += indexBySchemaClass(PhysicalEntity.class, entriesCount);
+        for (Class<? extends DatabaseObject> clazz : INDEXED_CLASSES) {
+            if (checkpoint.isDone(clazz.getSimpleName())) {
+                logger.info(clazz.getSimpleName() + " has already been indexed");
+                continue;
+            }
+            entriesCount += indexBySchemaClass(clazz, entriesCount, xmlMarshaller, checkpoint);
             commitSolrServer();
+            checkpoint.classDone(entriesCount);
             cleanNeo4jCache();
+        }
 
-            entriesCount += indexBySchemaClass(Event.class, entriesCount);
-            commitSolrServer();
-            cleanNeo4jCache();
+        if (xmlMarshaller != null) {
+            xmlMarshaller.writeFooter(entriesCount);
+        }
 
-            entriesCount += indexBySchemaClass(Regulation.class, entriesCount);
+        if (!IndexerCheckpoint.FINISHING.equals(checkpoint.getStage())) {
+            checkpoint.stageDone(IndexerCheckpoint.INTERACTORS, entriesCount);
+            if (checkpoint.isResumed()) {
+                // Interactors are sent at once, whatever was sent by the failed indexing is replaced
+                deleteInteractors();
+            }
+            logger.info("Started importing Interactors data to SolR");
+            entriesCount += indexInteractors();
             commitSolrServer();
-            cleanNeo4jCache();
+            checkpoint.stageDone(IndexerCheckpoint.FINISHING, entriesCount);
+        }
+
+        return entriesCount;
+    }
+
+    /**
+     * Only the documents added or modified since the previous indexing are (re)indexed and the ones that are
+     * not in the graph anymore are deleted.
+     * <p>
+     * An object is considered modified when itself or any object whose data is copied into its document (see
+     * {@link #DOCUMENT_PATHS}) has been created or modified (InstanceEdit dateTime) after the last modification
+     * recorded in the previous state. SimpleEntities are always rebuilt, since their fireworks species come from
+     * every reaction they take part in, at any depth. Interactors are always rebuilt since they depend on the
+     * accessions present in the whole graph.
+     * <p>
+     * Changes that are not recorded by an InstanceEdit, e.g. a release script updating the graph directly, are
+     * not seen. A full indexing has to be run after them.
+     *
+     * @param previousState state saved by the previous indexing
+     * @return total of indexed items
+     */
+    private int indexDelta(IndexerState previousState) throws IndexerException {
+        logger.info("Delta indexing since release " + previousState.getIndexerRelease() + " (last modification " + previousState.getIndexerLastModified() + ")");
+        if (xml) {
+            logger.warn("The ebeye.xml file needs every entry and is not written by a delta indexing");
+        }
+
+        Set<Long> indexedIds = getIndexedDbIds();
+        Set<Long> graphIds = new HashSet<>();
+        Map<Class<? extends DatabaseObject>, List<Long>> changedByClass = new LinkedHashMap<>();
+        total = 0;
+        for (Class<? extends DatabaseObject> clazz : INDEXED_CLASSES) {
+            Collection<Long> allOfGivenClass = schemaService.getDbIdsByClass(clazz);
+            graphIds.addAll(allOfGivenClass);
+
+            Set<Long> modified = getModifiedDbIds(clazz, previousState.getIndexerLastModified());
+            if (clazz == PhysicalEntity.class) {
+                modified.addAll(schemaService.getDbIdsByClass(SimpleEntity.class));
+            }
+            List<Long> changed = new ArrayList<>();
+            for (Long dbId : allOfGivenClass) {
+                if (!indexedIds.contains(dbId) || modified.contains(dbId)) changed.add(dbId);
+            }
+            changedByClass.put(clazz, changed);
+            total += changed.size();
+            logger.info("[" + changed.size() + "] " + clazz.getSimpleName() + " added or modified");
+        }
 
-            if (xml) {
-                marshaller.writeFooter(entriesCount);
+        List<String> removed = new ArrayList<>();
+        for (Long dbId : indexedIds) {
+            if (!graphIds.contains(dbId)) removed.add(dbId.toString());
+        }
+        logger.info("[" + removed.size() + "] documents are not in the graph anymore");
+
+        int entriesCount = 0;
+        try {
+            if (!removed.isEmpty()) solrClient.deleteById(removed);
+
+            for (Map.Entry<Class<? extends DatabaseObject>, List<Long>> entry : changedByClass.entrySet()) {
+                entriesCount += indexDbIds(entry.getKey(), entry.getValue(), entriesCount, null, null);
+                commitSolrServer();
+                cleanNeo4jCache();
             }
 
             logger.info("Started importing Interactors data to SolR");
+            deleteInteractors();
             entriesCount += indexInteractors();
             commitSolrServer();
-            logger.info("Entries total: " + entriesCount);
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("An error occurred while deleting documents from Solr", e);
+        }
 
-            long end = System.currentTimeMillis() - start;
-            logger.info("Full indexing took " + end + " .ms");
+        return entriesCount;
+    }
 
-            System.out.println("\nData Import finished with " + entriesCount + " entries imported.");
+    /**
+     * @return the dbIds of every document in Solr that comes from the graph. Interactors are skipped
+     */
+    private Set<Long> getIndexedDbIds() throws IndexerException {
+        logger.info("Retrieving the dbIds present in Solr");
+        Set<Long> dbIds = new HashSet<>();
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields("dbId");
+        query.setRows(CURSOR_ROWS);
+        query.setSort(SolrQuery.SortClause.asc("dbId"));
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        try {
+            while (true) {
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse response = solrClient.query(query);
+                for (SolrDocument document : response.getResults()) {
+                    String dbId = (String) document.getFieldValue("dbId");
+                    if (StringUtils.isNumeric(dbId)) dbIds.add(Long.valueOf(dbId));
+                }
+                String nextCursorMark = response.getNextCursorMark();
+                if (cursorMark.equals(nextCursorMark)) break;
+                cursorMark = nextCursorMark;
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("Could not retrieve the dbIds present in Solr", e);
+        }
+        logger.info("[" + dbIds.size() + "] dbIds present in Solr");
+        return dbIds;
+    }
 
-            return entriesCount;
+    /**
+     * @param since InstanceEdit dateTime
+     * @return dbIds of the given class created or modified after since, or whose document copies data from an
+     * object that was
+     */
+    private Set<Long> getModifiedDbIds(Class<? extends DatabaseObject> clazz, String since) throws IndexerException {
+        String label = clazz.getSimpleName();
+        List<String> queries = new ArrayList<>();
+        for (String path : DOCUMENT_PATHS) {
+            queries.add("MATCH (n:" + label + ")" + path + "-[:created|modified]->(ie:InstanceEdit) WHERE ie.dateTime > {since} " +
+                        "RETURN DISTINCT n.dbId AS dbId");
+        }
+        String query = String.join(" UNION ", queries);
+        Map<String, Object> params = new HashMap<>();
+        params.put("since", since == null ? "" : since);
+        try {
+            return new HashSet<>(advancedDatabaseObjectService.customQueryResults(Long.class, query, params));
         } catch (Exception e) {
-            logger.error("An error occurred during the data import", e);
-            e.printStackTrace();
-            throw new IndexerException(e);
-        } finally {
-            closeSolrServer();
+            throw new IndexerException("Could not retrieve the modified " + label, e);
+        }
+    }
+
+    /**
+     * @return the state saved by the previous indexing of the core, null if there is none
+     */
+    private IndexerState readIndexerState() throws IndexerException {
+        IndexerState state = IndexerState.read(stateFile, getStateCore());
+        return state != null && state.getIndexerLastModified() != null ? state : null;
+    }
+
+    /**
+     * @return the core the state is kept for, the one written by this indexing
+     */
+    private String getStateCore() {
+        return shadowCore != null ? shadowCore : stateCore;
+    }
+
+    private void deleteInteractors() throws IndexerException {
+        try {
+            solrClient.deleteByQuery("exactType:Interactor");
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("An error occurred while deleting the interactors from Solr", e);
+        }
+    }
+
+    /**
+     * @return the release number of the graph database, null if it cannot be retrieved
+     */
+    private Integer getReleaseNumber() {
+        if (snapshot != null) return snapshot.getRelease();
+        try {
+            return generalService.getDBVersion();
+        } catch (Exception e) {
+            logger.error("An error occurred when trying to retrieve the release number from the database.");
+            return null;
         }
     }
 
     /**
+     * @return the last modification (InstanceEdit dateTime) of the graph database, null if it cannot be retrieved
+     */
+    private String getLastModified() {
+        if (snapshot != null) return snapshot.getLastModified();
+        try {
+            Collection<String> result = advancedDatabaseObjectService.customQueryResults(String.class, "MATCH (ie:InstanceEdit) RETURN MAX(ie.dateTime) AS dateTime", null);
+            if (result != null && !result.isEmpty()) return result.iterator().next();
+        } catch (Exception e) {
+            logger.error("An error occurred when trying to retrieve the last modification date from the database.", e);
+        }
+        return null;
+    }
+
+    private void saveIndexerState() throws IndexerException {
+        Integer release = getReleaseNumber();
+        String lastModified = getLastModified();
+
+        IndexerState state = new IndexerState(release, lastModified, new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").format(new Date()));
+        IndexerState.write(stateFile, getStateCore(), state);
+        logger.info("Indexer state of " + getStateCore() + " saved: release " + release + ", last modification " + lastModified);
+    }
+
+    /**
+     * Documents for the given class go through a {@link DocumentPipeline}. The dbIds are split in chunks of
+     * {@link #ADD_INTERVAL} and each one of the {@link #threads} graph workers takes the next available chunk
+     * and reads it from the graph in its own Neo4j session. When projection is enabled the workers only fetch
+     * the rows and the documents are assembled by the build stage. Documents are then added to Solr and written
+     * to the XML by the pipeline sinks, so slow Solr requests do not stall the graph reads.
+     * <p>
+     * The dbIds are sorted, so the chunks are the same when an indexing is resumed from its checkpoint.
+     *
      * @param clazz class to be Indexed
      * @return total of indexed items
      */
-    private int indexBySchemaClass(Class<? extends DatabaseObject> clazz, int previousCount) throws IndexerException {
-        long start = System.currentTimeMillis();
-
+    private int indexBySchemaClass(Class<? extends DatabaseObject> clazz, int previousCount, Marshaller xmlMarshaller, IndexerCheckpoint checkpoint) throws IndexerException {
         logger.info("Getting all simple objects of class " + clazz.getSimpleName());
-        Collection<Long> allOfGivenClass = schemaService.getDbIdsByClass(clazz);
-        logger.info("[" + allOfGivenClass.size() + "] " + clazz.getSimpleName());
+        List<Long> allOfGivenClass = getDbIds(clazz);
+        return indexDbIds(clazz, allOfGivenClass, previousCount, xmlMarshaller, checkpoint);
+    }
 
-        final int addInterval = 1000;
-        int numberOfDocuments = 0;
-        int count = 0;
-        List<IndexDocument> allDocuments = new ArrayList<>();
-        List<Long> missingDocuments = new ArrayList<>();
-        for (Long dbId : allOfGivenClass) {
-
-            IndexDocument document = documentBuilder.createSolrDocument(dbId); // transactional
-            if (document != null) {
-                if (xml) marshaller.writeEntry(document);
-                allDocuments.add(document);
-            } else {
-                missingDocuments.add(dbId);
-            }
+    /**
+     * @return the sorted dbIds of the given class, from the snapshot if there is one
+     */
+    private List<Long> getDbIds(Class<? extends DatabaseObject> clazz) {
+        if (snapshot != null) return snapshot.getDbIds(clazz.getSimpleName());
+        List<Long> dbIds = new ArrayList<>(schemaService.getDbIdsByClass(clazz));
+        Collections.sort(dbIds);
+        return dbIds;
+    }
 
-            numberOfDocuments++;
-            if (numberOfDocuments % addInterval == 0 && !allDocuments.isEmpty()) {
-                addDocumentsToSolrServer(allDocuments);
-                allDocuments.clear();
+    /**
+     * @param clazz           class of the given dbIds
+     * @param allOfGivenClass the dbIds to be indexed
+     * @param xmlMarshaller   writes the ebeye.xml entries, null if they are not needed
+     * @param checkpoint      progress is saved here while Solr acknowledges the chunks, null if not checkpointed
+     * @return total of indexed items
+     */
+    private int indexDbIds(Class<? extends DatabaseObject> clazz, List<Long> allOfGivenClass, int previousCount, Marshaller xmlMarshaller, IndexerCheckpoint checkpoint) throws IndexerException {
+        long start = System.currentTimeMillis();
+        logger.info("[" + allOfGivenClass.size() + "] " + clazz.getSimpleName() + " using " + threads + " thread(s)");
 
-                if (xml) {
+        final int chunks = (allOfGivenClass.size() + ADD_INTERVAL - 1) / ADD_INTERVAL;
+        final int firstChunk = checkpoint != null ? checkpoint.startClass(clazz.getSimpleName(), allOfGivenClass.size()) : 0;
+        if (firstChunk > 0) {
+            logger.info("Resuming " + clazz.getSimpleName() + " after " + firstChunk + " committed chunk(s)");
+        }
+        final AtomicInteger nextChunk = new AtomicInteger(firstChunk);
+        final int alreadyIndexed = Math.min(firstChunk * ADD_INTERVAL, allOfGivenClass.size());
+        final AtomicInteger numberOfDocuments = new AtomicInteger(alreadyIndexed);
+        metrics.setStage(clazz.getSimpleName());
+        final List<Long> missingDocuments = Collections.synchronizedList(new ArrayList<>());
+
+        DocumentPipeline.DocumentSink solrSink = (chunk, documents) -> {
+            if (!documents.isEmpty()) addDocumentsToSolrServer(documents);
+            if (checkpoint != null) chunkAcknowledged(checkpoint, chunk);
+        };
+
+        int builders = projection || snapshot != null ? Math.max(1, threads / 4) : 0;
+        try (DocumentPipeline pipeline = new DocumentPipeline(clazz.getSimpleName(), builders, solrThreads, PIPELINE_CAPACITY * threads, solrSink, xmlMarshaller, metrics)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads, new IndexerThreadFactory(clazz.getSimpleName()));
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
                     try {
-                        marshaller.flush();
-                    } catch (IOException e) {
-                        logger.error("An error occurred when trying to flush to XML", e);
+                        indexChunks(pipeline, allOfGivenClass, chunks, nextChunk, numberOfDocuments, missingDocuments, previousCount);
+                    } finally {
+                        // The executor only lives for this class, its threads do not reuse the session
+                        neo4jConfig.releaseSession();
                     }
-                }
-                logger.info(numberOfDocuments + " " + clazz.getSimpleName() + " have now been added to SolR");
+                    return null;
+                }));
             }
+            executor.shutdown();
 
-            count = previousCount + numberOfDocuments;
-            if (count % 100 == 0) {
-                updateProgressBar(count);
+            try {
+                for (Future<Void> worker : workers) {
+                    worker.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IndexerException("Indexing " + clazz.getSimpleName() + " has been interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IndexerException("An error occurred while indexing " + clazz.getSimpleName(), e.getCause());
+            } finally {
+                executor.shutdownNow();
             }
-
-            if (numberOfDocuments % 30000 == 0) cleanNeo4jCache();
-        }
-
-        // Add to Solr the remaining documents
-        if (!allDocuments.isEmpty()) {
-            addDocumentsToSolrServer(allDocuments);
         }
 
         long end = System.currentTimeMillis() - start;
         logger.info("Elapsed time for " + clazz.getSimpleName() + " is " + end + "ms.");
+        metrics.classIndexed(clazz.getSimpleName(), numberOfDocuments.get() - alreadyIndexed, end);
 
         if (!missingDocuments.isEmpty()) {
             logger.info("\nMissing documents for:\n\t" + StringUtils.join(missingDocuments, "\n\t"));
         }
 
-        updateProgressBar(count); // done
+        updateProgressBar(previousCount + numberOfDocuments.get()); // done
 
-        return numberOfDocuments;
+        return numberOfDocuments.get();
+    }
+
+    /**
+     * Once Solr has acknowledged every chunk up to a new watermark, Solr is committed and then the checkpoint
+     * is saved. Chunks acknowledged beyond the watermark are committed as well but will be sent again on resume.
+     */
+    private void chunkAcknowledged(IndexerCheckpoint checkpoint, int chunk) throws IndexerException {
+        synchronized (checkpoint) {
+            if (checkpoint.acknowledge(chunk)) {
+                commitSolrServer(false);
+                checkpoint.save();
+            }
+        }
+    }
+
+    /**
+     * Graph worker loop: takes the next chunk of dbIds until none is left and hands it to the pipeline.
+     * Each worker runs in its own thread and therefore uses its own Neo4j session (see IndexerNeo4jConfig),
+     * which is also cleaned by the worker itself and released once it has finished.
+     */
+    private void indexChunks(DocumentPipeline pipeline, List<Long> dbIds, int chunks, AtomicInteger nextChunk,
+                             AtomicInteger numberOfDocuments, List<Long> missingDocuments, int previousCount) throws IndexerException {
+        final int cacheCleanInterval = Math.max(ADD_INTERVAL, NEO4J_CACHE_CLEAN_INTERVAL / threads);
+        final Histogram fetchTime = metrics.latency(IndexerMetrics.GRAPH_FETCH);
+        final Histogram createTime = metrics.latency(IndexerMetrics.DOCUMENT_CREATE);
+        int processedByWorker = 0;
+
+        int chunk;
+        while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+            int from = chunk * ADD_INTERVAL;
+            int to = Math.min(from + ADD_INTERVAL, dbIds.size());
+            List<Long> chunkIds = dbIds.subList(from, to);
+            if (projection || snapshot != null) {
+                // Only the graph (or snapshot) reads happen here, the documents are assembled by the build stage
+                long start = System.nanoTime();
+                DocumentProjection.ProjectedRows rows = snapshot != null ? documentProjection.read(snapshot, chunkIds) : documentProjection.fetch(chunkIds);
+                fetchTime.recordSince(start);
+                pipeline.submitBuild(chunk, () -> documentProjection.build(rows, missingDocuments));
+                updateProgressBar(previousCount + numberOfDocuments.addAndGet(chunkIds.size()));
+            } else {
+                List<IndexDocument> allDocuments = new ArrayList<>(chunkIds.size());
+                for (Long dbId : chunkIds) {
+                    long start = System.nanoTime();
+                    IndexDocument document = documentBuilder.createSolrDocument(dbId); // transactional
+                    createTime.recordSince(start);
+                    if (document != null) {
+                        allDocuments.add(document);
+                    } else {
+                        missingDocuments.add(dbId);
+                    }
+
+                    int count = previousCount + numberOfDocuments.incrementAndGet();
+                    if (count % 100 == 0) {
+                        updateProgressBar(count);
+                    }
+
+                    if (++processedByWorker % cacheCleanInterval == 0) cleanNeo4jCache();
+                }
+                pipeline.submitDocuments(chunk, allDocuments);
+            }
+        }
     }
 
     /**
@@ -208,9 +693,10 @@ public class Indexer {
      */
     private void totalCount() {
         logger.info("Counting all entries for Event, PhysicalEntities and Regulation");
-        total = schemaService.countEntries(Event.class);
-        total += schemaService.countEntries(PhysicalEntity.class);
-        total += schemaService.countEntries(Regulation.class);
+        total = 0;
+        for (Class<? extends DatabaseObject> clazz : INDEXED_CLASSES) {
+            total += snapshot != null ? snapshot.count(clazz.getSimpleName()) : schemaService.countEntries(clazz);
+        }
     }
 
     /**
@@ -219,6 +705,8 @@ public class Indexer {
      * @throws IndexerException not cleaning the indexer means the indexer will failed.
      */
     private void cleanSolrIndex() throws IndexerException {
+        // The core does not hold the previous indexing anymore, a delta cannot start from it
+        IndexerState.write(stateFile, getStateCore(), null);
         try {
             logger.info("Cleaning solr index");
             solrClient.deleteByQuery("*:*");
@@ -230,12 +718,24 @@ public class Indexer {
         }
     }
 
+    private DocumentSender createSolrSender() throws IndexerException {
+        if (shardClients != null) {
+            return ShardedDocumentSender.forCollection((CloudSolrClient) solrClient, shardClients, solrThreads, solrBatchMinBytes, solrBatchMaxBytes, deadLetterFile, metrics);
+        }
+        if (embeddedIndex != null && !embeddedIndex.getPartitions().isEmpty()) {
+            return ShardedDocumentSender.forPartitions(embeddedIndex.getPartitions(), solrThreads, solrBatchMinBytes, solrBatchMaxBytes, deadLetterFile, metrics);
+        }
+        return new SolrDocumentSender(solrClient, solrBatchMinBytes, solrBatchMaxBytes, deadLetterFile, metrics);
+    }
+
     /**
      * Closes connection to Solr Server
      */
     private void closeSolrServer() {
         try {
+            if (solrSender instanceof ShardedDocumentSender) ((ShardedDocumentSender) solrSender).close();
             solrClient.close();
+            if (adminClient != null) adminClient.close();
             logger.info("SolrServer shutdown");
         } catch (IOException e) {
             logger.error("an error occurred while closing the SolrServer", e);
@@ -243,44 +743,99 @@ public class Indexer {
     }
 
     /**
-     * Commits Data that has been added till now to Solr Server
+     * Commits Data that has been added till now to Solr Server.
+     * A shadow core is not queried until it is swapped, so intermediate commits only flush the data to disk
+     * without opening a new searcher.
      *
      * @throws IndexerException not committing could mean that this Data will not be added to Solr
      */
     private void commitSolrServer() throws IndexerException {
+        commitSolrServer(shadowCore == null);
+    }
+
+    private void commitSolrServer(boolean openSearcher) throws IndexerException {
         try {
-            solrClient.commit();
-            logger.info("Solr index has been committed and flushed to disk");
+            if (openSearcher) {
+                solrClient.commit();
+            } else {
+                UpdateRequest request = new UpdateRequest();
+                request.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, false);
+                request.setParam(UpdateParams.OPEN_SEARCHER, "false");
+                request.process(solrClient);
+            }
+            logger.info("Solr index has been committed and flushed to disk" + (openSearcher ? "" : " (no searcher opened)"));
         } catch (Exception e) {
             logger.error("Error occurred while committing", e);
             throw new IndexerException("Could not commit", e);
         }
     }
 
+    /**
+     * Merges the index down to {@link #maxSegments}, e.g. an index built offline before it is shipped
+     */
+    private void optimizeSolrServer() throws IndexerException {
+        try {
+            long start = System.currentTimeMillis();
+            logger.info("Optimizing the Solr index to " + maxSegments + " segment(s)");
+            solrClient.optimize(true, shadowCore == null, maxSegments);
+            logger.info("Solr index has been optimized in " + (System.currentTimeMillis() - start) / 1000 + "s");
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("Could not optimize the Solr index", e);
+        }
+    }
+
+    /**
+     * The shadow core is only swapped if it is not empty and holds, at least, {@link #SWAP_MIN_RATIO}
+     * of the documents currently in the live core.
+     *
+     * @throws IndexerException the shadow core is not good enough to go live
+     */
+    private void verifyShadowCore() throws IndexerException {
+        try {
+            SolrQuery count = new SolrQuery("*:*");
+            count.setRows(0);
+            long shadowCount = solrClient.query(count).getResults().getNumFound();
+            long liveCount = adminClient.query(liveCore, count).getResults().getNumFound();
+            logger.info("Shadow core " + shadowCore + " has " + shadowCount + " documents, live core " + liveCore + " has " + liveCount);
+
+            if (shadowCount == 0) {
+                throw new IndexerException("Shadow core " + shadowCore + " is empty. Cores are not swapped.");
+            }
+            if (shadowCount < liveCount * SWAP_MIN_RATIO) {
+                throw new IndexerException("Shadow core " + shadowCore + " has " + shadowCount + " documents, less than " +
+                        (int) (SWAP_MIN_RATIO * 100) + "% of the " + liveCount + " in " + liveCore + ". Cores are not swapped.");
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("Could not verify the shadow core " + shadowCore, e);
+        }
+    }
+
+    /**
+     * Atomically swaps the live and the shadow cores. Searches are served by the new index from now on,
+     * and the previous one stays in the shadow core.
+     */
+    private void swapCores() throws IndexerException {
+        try {
+            CoreAdminRequest request = new CoreAdminRequest();
+            request.setAction(CoreAdminParams.CoreAdminAction.SWAP);
+            request.setCoreName(liveCore);
+            request.setOtherCoreName(shadowCore);
+            request.process(adminClient);
+            logger.info("Cores " + liveCore + " and " + shadowCore + " have been swapped");
+            IndexerState.swap(stateFile, liveCore, shadowCore);
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("Could not swap " + liveCore + " and " + shadowCore, e);
+        }
+    }
+
     /**
      * Safely adding Document Bean to Solr Server
      *
-     * @param documents List of Documents that will be added to Solr
-     *                  <p>
-     *                  REMOTE_SOLR_EXCEPTION is a Runtime Exception
+     * @param documents List of Documents that will be added to Solr, see {@link SolrDocumentSender}
      */
-    private void addDocumentsToSolrServer(List<IndexDocument> documents) {
+    private void addDocumentsToSolrServer(List<IndexDocument> documents) throws IndexerException {
         if (documents != null && !documents.isEmpty()) {
-            try {
-                solrClient.addBeans(documents);
-                logger.debug(documents.size() + " Documents successfully added to SolR");
-            } catch (IOException | SolrServerException | HttpSolrClient.RemoteSolrException e) {
-                for (IndexDocument document : documents) {
-                    try {
-                        solrClient.addBean(document);
-                        logger.debug("A single document was added to Solr");
-                    } catch (IOException | SolrServerException | HttpSolrClient.RemoteSolrException e1) {
-                        logger.error("Could not add document", e);
-                        logger.error("Document DBID: " + document.getDbId() + " Name " + document.getName());
-                    }
-                }
-                logger.error("Could not add document", e);
-            }
+            solrSender.send(documents);
         } else {
             logger.error("Solr Documents are null or empty");
         }
@@ -290,18 +845,182 @@ public class Indexer {
         this.solrClient = solrClient;
     }
 
+    /**
+     * Indexes a SolrCloud collection sending every document to the leader of its shard, in parallel for all the
+     * shards. Everything else (cleaning, commits) goes through the cloud client.
+     *
+     * @param cloudClient  client of the collection, set as its default collection
+     * @param shardClients creates the client of a shard leader from its core url
+     */
+    public void setSolrCloud(CloudSolrClient cloudClient, Function<String, SolrClient> shardClients) {
+        this.solrClient = cloudClient;
+        this.shardClients = shardClients;
+    }
+
+    /**
+     * Builds the index in a core embedded in this JVM. With partitions, the documents are written to them in
+     * parallel and merged into the main core once everything has been indexed.
+     */
+    public void setEmbeddedIndex(EmbeddedSolrIndex embeddedIndex) {
+        this.solrClient = embeddedIndex.getClient();
+        this.embeddedIndex = embeddedIndex;
+    }
+
+    /**
+     * Builds the index in the shadow core and swaps it with the live core once everything has been committed
+     * and verified.
+     *
+     * @param adminClient client pointing to the Solr base url, used for CoreAdmin requests
+     * @param liveCore    name of the core serving the searches
+     * @param shadowCore  name of the core where the index is built (the solrClient has to point to it)
+     */
+    public void setShadowCore(SolrClient adminClient, String liveCore, String shadowCore) {
+        this.adminClient = adminClient;
+        this.liveCore = liveCore;
+        this.shadowCore = shadowCore;
+    }
+
+    /**
+     * @param maxSegments the index is optimized down to this number of segments once it is built, 0 not to optimize
+     */
+    public void setMaxSegments(int maxSegments) {
+        if (maxSegments < 0) {
+            throw new IllegalArgumentException("maxSegments cannot be negative");
+        }
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Bounds of the estimated payload of each Solr update request. The size is adapted between them following
+     * the Solr latency.
+     */
+    public void setSolrBatchBytes(int minBytes, int maxBytes) {
+        if (minBytes < 1 || maxBytes < minBytes) {
+            throw new IllegalArgumentException("Solr batch bounds must be positive and min <= max");
+        }
+        this.solrBatchMinBytes = minBytes;
+        this.solrBatchMaxBytes = maxBytes;
+    }
+
+    /**
+     * @param stateFile file keeping the state of the indexed cores, read by the next delta indexing
+     * @param core      name of the core being indexed in the state file. With a shadow core, the shadow and live
+     *                  core names are used instead
+     */
+    public void setStateFile(File stateFile, String core) {
+        this.stateFile = stateFile;
+        this.stateCore = core;
+    }
+
+    /**
+     * @param deadLetterFile documents rejected by Solr are written here, one JSON object per line
+     */
+    public void setDeadLetterFile(File deadLetterFile) {
+        this.deadLetterFile = deadLetterFile;
+    }
+
     public Boolean getXml() {
         return xml;
     }
 
     public void setXml(Boolean xml) {
         this.xml = xml;
-        if (xml) {
-            marshaller = new Marshaller(new File("ebeye.xml"), EBEYE_NAME, EBEYE_DESCRIPTION);
+    }
+
+    /**
+     * @param xmlGzip the ebeye.xml is compressed as it is written, into ebeye.xml.gz
+     */
+    public void setXmlGzip(boolean xmlGzip) {
+        this.xmlGzip = xmlGzip;
+    }
+
+    private Marshaller createMarshaller() {
+        File output = new File(xmlGzip ? "ebeye.xml.gz" : "ebeye.xml");
+        return new Marshaller(output, EBEYE_NAME, EBEYE_DESCRIPTION, xmlGzip);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
         }
+        this.threads = threads;
+    }
+
+    public int getSolrThreads() {
+        return solrThreads;
+    }
+
+    public void setSolrThreads(int solrThreads) {
+        if (solrThreads < 1) {
+            throw new IllegalArgumentException("solrThreads must be at least 1");
+        }
+        this.solrThreads = solrThreads;
+    }
+
+    public boolean isProjection() {
+        return projection;
+    }
+
+    public void setProjection(boolean projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * The documents are built from the rows of a snapshot exported by {@link #exportSnapshot(File)} instead of
+     * the graph. Interactors and delta indexings still need the graph.
+     *
+     * @param file previously exported snapshot
+     */
+    public void setSnapshot(File file) throws IndexerException {
+        try {
+            this.snapshot = GraphSnapshot.open(file);
+        } catch (IOException e) {
+            throw new IndexerException("Could not open the graph snapshot " + file.getAbsolutePath(), e);
+        }
+        logger.info("Documents are built from the graph snapshot " + file.getAbsolutePath() + " (release " + snapshot.getRelease() + ")");
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @param resume continues the full indexing from the checkpoint saved by a previous failed indexing
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @param taxonomyResolver resolves the species of interactors whose taxonomy is not a Reactome species.
+     *                         Required to index the interactors, there is no default one querying the network
+     */
+    public void setTaxonomyResolver(TaxonomyResolver taxonomyResolver) {
+        this.taxonomyResolver = taxonomyResolver;
+    }
+
+    /**
+     * @param accessionStoreFolder the interactor accessions are written and memory-mapped in this folder instead
+     *                             of being kept in the heap, null to keep them in the heap
+     */
+    public void setAccessionStoreFolder(File accessionStoreFolder) {
+        this.accessionStoreFolder = accessionStoreFolder;
     }
 
     public void setInteractorsDatabase(InteractorsDatabase interactorsDatabase) {
+        this.interactorsDatabase = interactorsDatabase;
         interactorService = new InteractorService(interactorsDatabase);
         interactionService = new InteractionService(interactorsDatabase);
     }
@@ -309,16 +1028,23 @@ public class Indexer {
     /**
      * Save a document containing an interactor that IS NOT in Reactome and a List of Interactions
      * with Reactome proteins
+     * <p>
+     * The interactors are streamed, already aggregated, by {@link InteractorRows} with a single query over the
+     * interactors database. If the database schema is not the one it reads, interactions are retrieved through the
+     * InteractionService for {@link #ADD_INTERVAL} accessions at a time instead. Either way the documents are handed
+     * to a {@link DocumentPipeline}, which sends them to Solr on its own threads, in batches of {@link #ADD_INTERVAL},
+     * so only a chunk of interactions and a few batches of documents are in memory at any time.
      *
      * @throws IndexerException interactors are mandatory
      */
     private int indexInteractors() throws IndexerException {
+        if (taxonomyResolver == null) throw new IndexerException("No taxonomy resolver has been set to resolve the interactors species");
         logger.info("Start indexing interactors into Solr");
+        metrics.setStage(IndexerCheckpoint.INTERACTORS);
+        long start = System.currentTimeMillis();
 
         int numberOfDocuments = 0;
         try {
-            List<IndexDocument> collection = new ArrayList<>();
-
             // Querying interactor database and retrieve all unique accession identifiers of intact-micluster file
             logger.info("Getting all accessions from Interactors Database");
             List<String> accessionsList = interactorService.getAllAccessions();
@@ -335,41 +1061,93 @@ public class Indexer {
 
             System.out.println("\n[Interactors] Started adding to SolR");
 
-            // Get Interactions for all accessions that are NOT in Reactome.
+            AccessionStore accessions = accessionsNotInReactome;
+            logger.info("Preparing SolR documents for Interactors [" + accessions.size() + "]");
+            total = accessions.size();
+
+            DocumentPipeline.DocumentSink solrSink = (c, documents) -> {
+                if (!documents.isEmpty()) addDocumentsToSolrServer(documents);
+            };
+            try (DocumentPipeline pipeline = new DocumentPipeline(IndexerCheckpoint.INTERACTORS, 0, solrThreads, PIPELINE_CAPACITY * solrThreads, solrSink, null, metrics)) {
+                Connection connection = interactorsDatabase != null ? interactorsDatabase.getConnection() : null;
+                if (connection != null && InteractorRows.isSupported(connection)) {
+                    numberOfDocuments = indexInteractorRows(pipeline, connection);
+                } else {
+                    logger.warn("The interactors database cannot be read with a single query, reading it through the InteractionService");
+                    numberOfDocuments = indexInteractorChunks(pipeline);
+                }
+            }
+
+            logger.info(numberOfDocuments + " Interactor(s) have now been added to SolR");
+            metrics.classIndexed(IndexerCheckpoint.INTERACTORS, numberOfDocuments, System.currentTimeMillis() - start);
+
+            updateProgressBar(accessions.size());
+
+        } catch (InvalidInteractionResourceException | SQLException e) {
+            throw new IndexerException(e);
+        } finally {
+            closeAccessionStores();
+        }
+
+        return numberOfDocuments;
+    }
+
+    /**
+     * Streams the interactors not in Reactome, with the partners in Reactome of each one, straight into documents
+     *
+     * @return number of documents
+     */
+    private int indexInteractorRows(DocumentPipeline pipeline, Connection connection) throws SQLException, IndexerException {
+        AccessionStore accessions = accessionsNotInReactome;
+        int numberOfDocuments = 0;
+        int chunk = 0;
+        List<IndexDocument> collection = new ArrayList<>(ADD_INTERVAL);
+        try (InteractorRows rows = new InteractorRows(connection, InteractorConstant.STATIC, InteractorConstant.MINIMUM_VALID_SCORE, accessions::contains, accessionMap::get)) {
+            InteractorRows.Row row;
+            while ((row = rows.next()) != null) {
+                collection.add(createInteractorsDocument(row.getInteractor(), row.getSummaries()));
+                numberOfDocuments++;
+                if (collection.size() == ADD_INTERVAL) {
+                    logger.info("  >> preparing interactors SolR Documents [" + numberOfDocuments + "]");
+                    pipeline.submitDocuments(chunk++, collection);
+                    collection = new ArrayList<>(ADD_INTERVAL);
+                    updateProgressBar(Math.min(numberOfDocuments, accessions.size()));
+                }
+            }
+        }
+        pipeline.submitDocuments(chunk, collection);
+        return numberOfDocuments;
+    }
+
+    /**
+     * Retrieves the interactions of {@link #ADD_INTERVAL} accessions at a time through the InteractionService
+     *
+     * @return number of documents
+     */
+    private int indexInteractorChunks(DocumentPipeline pipeline) throws InvalidInteractionResourceException, IndexerException {
+        AccessionStore accessions = accessionsNotInReactome;
+        int numberOfDocuments = 0;
+        int preparingSolrDocuments = 0;
+        int chunk = 0;
+        for (int from = 0; from < accessions.size(); from += ADD_INTERVAL) {
+            Set<String> chunkAccessions = new HashSet<>();
+            for (int i = from; i < Math.min(from + ADD_INTERVAL, accessions.size()); i++) {
+                chunkAccessions.add(accessions.getAccession(i));
+            }
+
+            // Get Interactions for the accessions that are NOT in Reactome.
             // Keep in mind that we are only saving interactions having score higher than InteractorConstant.MINIMUM_VALID_SCORE
             // The result of this query is Map having the accession as the key and a list of interactions. Take into account the
             // Interaction domain has InteractorA and InteractorB where interactorA is ALWAYS the same as the map key.
             // e.g map K=q13501, interactorA=q13501, interactorB=p12345 (this is the interaction)
-            Map<String, List<Interaction>> interactions = interactionService.getInteractions(accessionsNotInReactome, InteractorConstant.STATIC);
-
-            logger.info("Preparing SolR documents for Interactors [" + interactions.size() + "]");
-            total = interactions.size();
-            int preparingSolrDocuments = 0;
-            for (String accKey : interactions.keySet()) {
-                Set<InteractorSummary> interactorSummarySet = new HashSet<>();
-
-                // Interaction --> InteractorA and InteractorB where:
-                //   InteractorA is the one being queried in the database
-                //   InteractorB is the one that Interacts with A.
-                interactions.get(accKey).stream().filter(interaction -> accessionMap.containsKey(interaction.getInteractorB().getAcc())).forEach(interaction -> {
-                    InteractorSummary summary = new InteractorSummary();
-                    // get reactome information from the map based on interactor B. Interactor A is the one we are creating the document
-                    summary.setReactomeSummary(accessionMap.get(interaction.getInteractorB().getAcc()));
-                    summary.setAccession(interaction.getInteractorB().getAcc());
-                    summary.setScore(interaction.getIntactScore());
-
-                    for (InteractionDetails interactionDetails : interaction.getInteractionDetailsList()) {
-                        summary.addInteractionEvidences(interactionDetails.getInteractionAc());
-                    }
-
-                    interactorSummarySet.add(summary);
-                });
+            // The interactions of a chunk are released once its documents are created.
+            Map<String, List<Interaction>> interactions = interactionService.getInteractions(chunkAccessions, InteractorConstant.STATIC);
 
-                if (!interactorSummarySet.isEmpty()) {
-                    // Create index document based on interactor A and the summary based on Interactor B.
-                    IndexDocument indexDocument = createInteractorsDocument(interactions.get(accKey).get(0).getInteractorA(), interactorSummarySet);
+            List<IndexDocument> collection = new ArrayList<>();
+            for (List<Interaction> accInteractions : interactions.values()) {
+                IndexDocument indexDocument = createInteractorsDocument(accInteractions);
+                if (indexDocument != null) {
                     collection.add(indexDocument);
-
                     numberOfDocuments++;
                 }
 
@@ -377,79 +1155,61 @@ public class Indexer {
                 if (preparingSolrDocuments % 1000 == 0) {
                     logger.info("  >> preparing interactors SolR Documents [" + preparingSolrDocuments + "]");
                 }
-                if (preparingSolrDocuments % 100 == 0) {
-                    updateProgressBar(preparingSolrDocuments);
-                }
             }
 
-            logger.info("  >> preparing interactors SolR Documents [" + preparingSolrDocuments + "]");
-
-            // Save the indexDocument into Solr.
-            addDocumentsToSolrServer(collection);
-
-            logger.info(numberOfDocuments + " Interactor(s) have now been added to SolR");
-
-            updateProgressBar(preparingSolrDocuments);
-
-        } catch (InvalidInteractionResourceException | SQLException e) {
-            throw new IndexerException(e);
+            // Save the indexDocuments into Solr.
+            pipeline.submitDocuments(chunk++, collection);
+            updateProgressBar(Math.min(from + ADD_INTERVAL, accessions.size()));
         }
-
+        logger.info("  >> preparing interactors SolR Documents [" + preparingSolrDocuments + "]");
         return numberOfDocuments;
     }
 
+    /**
+     * @param interactions interactions of the same interactor A
+     * @return the interactor A document, null if it does not interact with Reactome
+     */
+    private IndexDocument createInteractorsDocument(List<Interaction> interactions) {
+        // Interaction --> InteractorA and InteractorB where:
+        //   InteractorA is the one being queried in the database
+        //   InteractorB is the one that Interacts with A.
+        // get reactome information from the map based on interactor B. Interactor A is the one we are creating the document
+        Set<InteractorSummary> interactorSummarySet = InteractorRows.summarize(interactions, accessionMap::get);
+
+        if (interactorSummarySet.isEmpty()) return null;
+
+        // Create index document based on interactor A and the summary based on Interactor B.
+        return createInteractorsDocument(interactions.get(0).getInteractorA(), interactorSummarySet);
+    }
 
     /**
-     * Query Ensembl REST API in order to get the taxonomy lineage
-     * and then get the parent.
+     * Walks the taxonomy lineage of the given taxId until one of the Reactome species is found.
      * <p>
-     * Once we found the species we add it to the global map, it will
-     * reduce the amount of queries to an external resource.
+     * Once we found the species we add it to the global map, so every taxId is only resolved once.
+     * Taxons without Reactome species are kept in the map as well.
      *
      * @return the species
      */
     private String getTaxonomyLineage(Integer taxId) {
         if (taxId == 1 || taxId == 0 || taxId == -1) {
-            return "Entries without species";
+            return NO_SPECIES;
         }
 
-        try {
-            String urlString = "http://rest.ensembl.org/taxonomy/id/" + taxId;
-            URL url = new URL(urlString);
-
-            URLConnection connection = url.openConnection();
-            HttpURLConnection httpConnection = (HttpURLConnection) connection;
-            httpConnection.setRequestProperty("Content-Type", "application/json");
-
-            InputStream response = httpConnection.getInputStream();
-
-            String StringFromInputStream = IOUtils.toString(response, "UTF-8");
-            JSONObject jsonObject = new JSONObject(StringFromInputStream);
-
-            int parentTaxId = jsonObject.getJSONObject("parent").getInt("id");
-
-            if (taxonomyMap.containsKey(parentTaxId)) {
-                String species = taxonomyMap.get(parentTaxId);
-                taxonomyMap.put(taxId, species);
-                return species;
-            }
-
-            response.close();
+        int[] lineage = taxonomyResolver.getLineage(taxId);
+        if (lineage == null) {
+            // Could not be resolved now, it will be tried again for the next interactor with this taxId
+            return NO_SPECIES;
+        }
 
-        } catch (IOException | JSONException e) {
-            String msg = e.getMessage();
-            if (msg.contains("429")) { // If we hammer ensembl server than we get an 429 STATUS CODE, if that occurs we just wait 50sec.
-                try {
-                    Thread.sleep(50000);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-                return getTaxonomyLineage(taxId);
-            } else {
-                logger.info("Taxomony ID does not exist: " + msg);
+        String species = NO_SPECIES;
+        for (int ancestor : lineage) {
+            if (taxonomyMap.containsKey(ancestor)) {
+                species = taxonomyMap.get(ancestor);
+                break;
             }
         }
-        return "Entries without species";
+        taxonomyMap.put(taxId, species);
+        return species;
     }
 
     /**
@@ -467,6 +1227,10 @@ public class Indexer {
     /**
      * Queries gk_instance and create a list of accessions that are not in reactome (accessionsNotInReactome) and
      * also a map with the accession +information (stIds,names) in reactome (accessionMap).
+     * <p>
+     * The IntAct accessions and the ReferenceEntity identifiers are sorted and merged, and the summaries are resolved
+     * for {@link #ACCESSION_BATCH_SIZE} accessions per query. Both stores are written in accession order, in the heap
+     * or, if {@link #setAccessionStoreFolder(File)} is given, memory-mapped.
      *
      * @param accessionList all unique accessions from Interactors Database excluding those that start with EBI-. They are provided by IntAct but does not have accession.
      * @throws IndexerException interactors are mandatory
@@ -474,81 +1238,92 @@ public class Indexer {
     private void createAccessionSet(List<String> accessionList) throws IndexerException {
 
         System.out.println("\n[Interactors] Creating accession set");
-        int progress = 0;
-
-        // Making a copy of the original accession list. Accessions that exist in Reactome will be removed from this
-        // collection. The final collection will hold those accessions that are not present in Reactome.
-        accessionsNotInReactome.addAll(accessionList);
-        Collection<String> referenceEntities;
 
         try {
-
             // Get all ReferenceEntities in Reactome Database. We have around 370000. These are the objects which have the accession.
             // Then, check if the given ref. identifier is in the accessionList (which has all the accessions from IntAct).
             String queryEntities = "MATCH (n:ReferenceEntity) RETURN DISTINCT n.identifier AS identifier";
-            referenceEntities = advancedDatabaseObjectService.customQueryResults(String.class, queryEntities, null);
-            total = referenceEntities.size();
+            List<String> referenceEntities = new ArrayList<>(advancedDatabaseObjectService.customQueryResults(String.class, queryEntities, null));
             logger.info("Retrieving accessions from Reactome -- Accession list has [" + accessionList.size() + "] entries and [" + referenceEntities.size() + "] ReferenceEntities");
-            for (String accession : referenceEntities) {
-                if (progress % 100 == 0) {
-                    updateProgressBar(progress);
-                }
-                progress++;
-
-                if (!accessionList.contains(accession)) continue;
-
-                // Removing the identifier that exists in Reactome.
-                // Remember, the final collection will hold those accessions that are not present in Reactome.
-                // At, we are going to get the Interactions using the accessions that are not in reactome.
-                accessionsNotInReactome.remove(accession);
-
-                // Get the referenceEntity in the referers, this instance has the accession we are interested in
-                Map<String, Object> param = new HashMap<>();
-                param.put("accession", accession);
-
-                // Retrieves the referenceEntity if it is directly associated to a Reaction.
-                String query = "MATCH (:ReferenceEntity{identifier:{accession}})<-[:referenceEntity]-(pe:PhysicalEntity)<-[:input|output|regulator|regulatedBy|physicalEntity|catalystActivity*]-(:ReactionLikeEvent) " +
-                        "RETURN DISTINCT pe.dbId as dbId, pe.stId as stId, pe.displayName as displayName";
-                Collection<SimpleDatabaseObject> ref = advancedDatabaseObjectService.customQueryForObjects(SimpleDatabaseObject.class, query, param);
-
-                if (ref == null || ref.isEmpty()) continue;
-
-                for (SimpleDatabaseObject simpleDatabaseObject : ref) {
 
+            referenceEntities.removeIf(Objects::isNull);
+            Collections.sort(referenceEntities);
+            Collections.sort(accessionList);
+
+            // Accessions that exist in Reactome are resolved below, the others are those whose interactions are indexed
+            List<String> accessionsInReactome = new ArrayList<>();
+            AccessionStore.Builder notInReactome = AccessionStore.builder(accessionStoreFolder, "accessionsNotInReactome.store");
+            int r = 0;
+            String previous = null;
+            for (String accession : accessionList) {
+                if (accession.equals(previous)) continue;
+                previous = accession;
+                while (r < referenceEntities.size() && referenceEntities.get(r).compareTo(accession) < 0) r++;
+                if (r < referenceEntities.size() && referenceEntities.get(r).equals(accession)) {
+                    accessionsInReactome.add(accession);
+                } else {
+                    notInReactome.add(accession, null);
+                }
+            }
+            referenceEntities = null;
+            accessionsNotInReactome = notInReactome.build();
+
+            // Retrieves the PhysicalEntities having the referenceEntity if they are directly associated to a Reaction.
+            String query = "UNWIND {accessions} AS accession " +
+                    "MATCH (:ReferenceEntity{identifier:accession})<-[:referenceEntity]-(pe:PhysicalEntity)<-[:input|output|regulator|regulatedBy|physicalEntity|catalystActivity*]-(:ReactionLikeEvent) " +
+                    "RETURN DISTINCT accession, pe.dbId AS dbId, pe.stId AS stId, pe.displayName AS displayName";
+
+            AccessionStore.Builder inReactome = AccessionStore.builder(accessionStoreFolder, "accessionsInReactome.store");
+            total = accessionsInReactome.size();
+            for (int i = 0; i < accessionsInReactome.size(); i += ACCESSION_BATCH_SIZE) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("accessions", new ArrayList<>(accessionsInReactome.subList(i, Math.min(i + ACCESSION_BATCH_SIZE, accessionsInReactome.size()))));
+
+                // Batches are sorted and disjoint, sorting each one keeps the whole store sorted
+                Map<String, ReactomeSummary> batch = new TreeMap<>();
+                for (Map<String, Object> row : session.query(query, params).queryResults()) {
                     // accessionMap is a map that has the accession as the Key
                     // and ReactomeSummary as the value. ReactomeSummary holds a list
                     // of ids (StId) and names that are refer to the accession.
-                    if (accessionMap.containsKey(accession)) {
-                        // If the accession is in the map, we get it and add the Id and Name into the list
-                        ReactomeSummary summary = accessionMap.get(accession);
-                        summary.addId(getId(simpleDatabaseObject));
-                        summary.addName(simpleDatabaseObject.getDisplayName());
-                    } else {
-                        // Otherwise create a new one and add to the map
-                        ReactomeSummary summary = new ReactomeSummary();
-                        summary.addId(getId(simpleDatabaseObject));
-                        summary.addName(simpleDatabaseObject.getDisplayName());
-                        accessionMap.put(accession, summary);
-                    }
+                    ReactomeSummary summary = batch.computeIfAbsent((String) row.get("accession"), k -> new ReactomeSummary());
+                    summary.addId(getId((Number) row.get("dbId"), (String) row.get("stId"), (String) row.get("displayName")));
+                    summary.addName((String) row.get("displayName"));
                 }
+                for (Map.Entry<String, ReactomeSummary> entry : batch.entrySet()) {
+                    inReactome.add(entry.getKey(), entry.getValue());
+                }
+                updateProgressBar(Math.min(i + ACCESSION_BATCH_SIZE, accessionsInReactome.size()));
             }
+            accessionMap = inReactome.build();
 
-            logger.info("  >> querying accessions in the Graph [" + progress + "]");
-
-            updateProgressBar(progress); // done
+            logger.info("  >> querying accessions in the Graph [" + accessionsInReactome.size() + "]");
 
         } catch (Exception e) {
+            closeAccessionStores();
             logger.error("Fetching Instances by ClassName from the Database caused an error", e);
             throw new IndexerException("Fetching Instances by ClassName from the Database caused an error", e);
         }
     }
 
-    private String getId(SimpleDatabaseObject simpleDatabaseObject) throws Exception {
-        if (StringUtils.isNotEmpty(simpleDatabaseObject.getStId())) {
-            return simpleDatabaseObject.getStId();
+    private void closeAccessionStores() {
+        for (AccessionStore store : Arrays.asList(accessionsNotInReactome, accessionMap)) {
+            if (store == null) continue;
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the accession store", e);
+            }
+        }
+        accessionsNotInReactome = null;
+        accessionMap = null;
+    }
+
+    private String getId(Number dbId, String stId, String displayName) {
+        if (StringUtils.isNotEmpty(stId)) {
+            return stId;
         } else {
-            logger.warn("No StableIdentifier for " + simpleDatabaseObject.getDbId() + " >> " + simpleDatabaseObject.getDisplayName());
-            return simpleDatabaseObject.getDbId().toString();
+            logger.warn("No StableIdentifier for " + dbId + " >> " + displayName);
+            return String.valueOf(dbId);
         }
     }
 
@@ -575,7 +1350,7 @@ public class Indexer {
         document.setSynonyms(Collections.singletonList(interactorA.getAlias()));
         document.setReferenceIdentifiers(Collections.singletonList(interactorA.getAcc()));
         document.setReferenceURL(Toolbox.getAccessionURL(interactorA.getAcc(), InteractorConstant.STATIC));
-        document.setDatabaseName(Toolbox.getDatabaseName(interactorA.getAcc()));
+        document.setDatabaseName(documentBuilder.getValuePool().canonical(Toolbox.getDatabaseName(interactorA.getAcc())));
 
         String species;
         if (taxonomyMap.containsKey(interactorA.getTaxid())) {
@@ -583,7 +1358,7 @@ public class Indexer {
         } else {
             species = getTaxonomyLineage(interactorA.getTaxid());
         }
-        document.setSpecies(Collections.singletonList(species));
+        document.setSpecies(Collections.singletonList(documentBuilder.getValuePool().canonical(species)));
 
         List<String> interactionIds = new ArrayList<>();
         List<String> accessions = new ArrayList<>();
@@ -637,7 +1412,7 @@ public class Indexer {
      *
      * @param done Number of entries added
      */
-    private void updateProgressBar(int done) {
+    private synchronized void updateProgressBar(int done) {
         final int width = 55;
 
         String format = "\r%3d%% %s %c";
@@ -658,6 +1433,23 @@ public class Indexer {
         generalService.clearCache();
     }
 
+    /**
+     * Names the workers after the class being indexed, so they can be told apart in the log file.
+     */
+    private static class IndexerThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        IndexerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + "-worker-" + counter.incrementAndGet());
+        }
+    }
+
     @Autowired
     public void setSchemaService(SchemaService schemaService) {
         this.schemaService = schemaService;
@@ -673,9 +1465,24 @@ public class Indexer {
         this.advancedDatabaseObjectService = advancedDatabaseObjectService;
     }
 
+    @Autowired
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    @Autowired
+    public void setNeo4jConfig(IndexerNeo4jConfig neo4jConfig) {
+        this.neo4jConfig = neo4jConfig;
+    }
+
     @Autowired
     public void setDocumentBuilder(DocumentBuilder documentBuilder) {
         this.documentBuilder = documentBuilder;
     }
+
+    @Autowired
+    public void setDocumentProjection(DocumentProjection documentProjection) {
+        this.documentProjection = documentProjection;
+    }
 }
 
@@ -0,0 +1,239 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Progress of a full indexing, kept in a local file so a failed indexing can be resumed.
+ * <p>
+ * Each indexed class is split in chunks of sorted dbIds. Chunks are sent to Solr concurrently and in any order,
+ * so the checkpoint only records the watermark: the number of leading chunks that Solr has acknowledged. The
+ * file is only saved after a Solr commit covering the watermark, hence everything below it is durable.
+ * Stages run in order: one per indexed class, then {@link #INTERACTORS}, then {@link #FINISHING}.
+ */
+class IndexerCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    static final String INTERACTORS = "Interactor";
+    static final String FINISHING = "Finishing";
+
+    private final File file;
+    private final Integer release;
+    private final int chunkSize;
+    private final int checkpointInterval;
+    // false when the progress is only kept in memory
+    private final boolean saved;
+
+    private String stage;
+    private int entriesCount = 0;
+    private final Map<String, ClassProgress> classes = new HashMap<>();
+    private final boolean resumed;
+
+    // Acknowledged chunks of the class being indexed
+    private final BitSet acknowledged = new BitSet();
+    private int watermark;
+    private int savedWatermark;
+
+    private static class ClassProgress {
+        int dbIds;
+        int chunks;        // committed chunks (watermark)
+        boolean done;
+    }
+
+    private IndexerCheckpoint(File file, Integer release, int chunkSize, int checkpointInterval, boolean resumed, boolean saved) {
+        this.file = file;
+        this.release = release;
+        this.chunkSize = chunkSize;
+        this.checkpointInterval = checkpointInterval;
+        this.resumed = resumed;
+        this.saved = saved;
+    }
+
+    /**
+     * @return an empty checkpoint. Any previous one is deleted, since the index is about to be cleaned
+     */
+    static IndexerCheckpoint start(File file, Integer release, int chunkSize, int checkpointInterval) {
+        IndexerCheckpoint checkpoint = new IndexerCheckpoint(file, release, chunkSize, checkpointInterval, false, true);
+        checkpoint.delete();
+        return checkpoint;
+    }
+
+    /**
+     * @return an empty checkpoint that is never saved, for an indexing that cannot be resumed. Any previous one
+     * is deleted, since the index is about to be cleaned
+     */
+    static IndexerCheckpoint startUnsaved(File file, Integer release, int chunkSize) {
+        IndexerCheckpoint checkpoint = new IndexerCheckpoint(file, release, chunkSize, Integer.MAX_VALUE, false, false);
+        checkpoint.delete();
+        return checkpoint;
+    }
+
+    /**
+     * @return the checkpoint saved by a previous indexing
+     * @throws IndexerException there is no checkpoint or it does not belong to this release and chunk size
+     */
+    static IndexerCheckpoint resume(File file, Integer release, int chunkSize, int checkpointInterval) throws IndexerException {
+        if (!file.exists()) {
+            throw new IndexerException("There is no checkpoint to resume from in " + file.getAbsolutePath());
+        }
+        IndexerCheckpoint checkpoint = new IndexerCheckpoint(file, release, chunkSize, checkpointInterval, true, true);
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            Integer savedRelease = json.has("release") ? json.getInt("release") : null;
+            if (!Objects.equals(savedRelease, release) || json.getInt("chunkSize") != chunkSize) {
+                throw new IndexerException("The checkpoint in " + file.getAbsolutePath() + " was created for release " +
+                        savedRelease + " and chunks of " + json.getInt("chunkSize") + ". It cannot be resumed for release " + release);
+            }
+            checkpoint.stage = json.getString("stage");
+            checkpoint.entriesCount = json.getInt("entriesCount");
+            JSONObject classes = json.getJSONObject("classes");
+            String[] names = JSONObject.getNames(classes);
+            for (String name : names != null ? names : new String[0]) {
+                JSONObject c = classes.getJSONObject(name);
+                ClassProgress progress = new ClassProgress();
+                progress.dbIds = c.getInt("dbIds");
+                progress.chunks = c.getInt("chunks");
+                progress.done = c.getBoolean("done");
+                checkpoint.classes.put(name, progress);
+            }
+        } catch (IOException | JSONException e) {
+            throw new IndexerException("Could not read the checkpoint " + file.getAbsolutePath(), e);
+        }
+        logger.info("Resuming from checkpoint: stage " + checkpoint.stage + ", " + checkpoint.entriesCount + " entries already indexed");
+        return checkpoint;
+    }
+
+    boolean isResumed() {
+        return resumed;
+    }
+
+    String getStage() {
+        return stage;
+    }
+
+    /**
+     * @return entries indexed by the completed stages
+     */
+    int getEntriesCount() {
+        return entriesCount;
+    }
+
+    boolean isDone(String className) {
+        ClassProgress progress = classes.get(className);
+        return progress != null && progress.done;
+    }
+
+    /**
+     * Starts (or continues) indexing the given class
+     *
+     * @param dbIds number of dbIds of the class in the graph
+     * @return first chunk that has not been committed yet
+     * @throws IndexerException the class does not have the same dbIds it had when the checkpoint was saved
+     */
+    synchronized int startClass(String className, int dbIds) throws IndexerException {
+        ClassProgress progress = classes.get(className);
+        if (progress == null) {
+            progress = new ClassProgress();
+            progress.dbIds = dbIds;
+            classes.put(className, progress);
+        } else if (progress.dbIds != dbIds) {
+            throw new IndexerException("There were " + progress.dbIds + " " + className + " when the checkpoint was saved, now there are " +
+                    dbIds + ". The graph has changed and the indexing cannot be resumed.");
+        }
+        stage = className;
+        acknowledged.clear();
+        watermark = savedWatermark = progress.chunks;
+        save();
+        return progress.chunks;
+    }
+
+    /**
+     * Records that Solr has acknowledged the documents of the given chunk of the current class
+     *
+     * @return true when the watermark has moved {@link #checkpointInterval} chunks since the last save. The caller
+     * is then expected to commit Solr and {@link #save()}. Always false if the checkpoint is not saved
+     */
+    synchronized boolean acknowledge(int chunk) {
+        acknowledged.set(chunk);
+        while (acknowledged.get(watermark)) watermark++;
+        return saved && watermark - savedWatermark >= checkpointInterval;
+    }
+
+    /**
+     * The current class has been completely sent and committed
+     *
+     * @param entriesCount entries indexed so far, including the ones of this class
+     */
+    synchronized void classDone(int entriesCount) throws IndexerException {
+        ClassProgress progress = classes.get(stage);
+        progress.done = true;
+        progress.chunks = (progress.dbIds + chunkSize - 1) / chunkSize;
+        watermark = savedWatermark = progress.chunks;
+        this.entriesCount = entriesCount;
+        save();
+    }
+
+    synchronized void stageDone(String nextStage, int entriesCount) throws IndexerException {
+        this.stage = nextStage;
+        this.entriesCount = entriesCount;
+        save();
+    }
+
+    /**
+     * Writes the checkpoint file. It is written aside and then moved, so the file is never left half written.
+     */
+    synchronized void save() throws IndexerException {
+        ClassProgress progress = classes.get(stage);
+        if (progress != null && !progress.done) {
+            progress.chunks = watermark;
+            savedWatermark = watermark;
+        }
+        if (!saved) return;
+
+        JSONObject json = new JSONObject();
+        try {
+            json.put("release", release);
+            json.put("chunkSize", chunkSize);
+            json.put("stage", stage);
+            json.put("entriesCount", entriesCount);
+            JSONObject jsonClasses = new JSONObject();
+            for (Map.Entry<String, ClassProgress> entry : classes.entrySet()) {
+                JSONObject c = new JSONObject();
+                c.put("dbIds", entry.getValue().dbIds);
+                c.put("chunks", entry.getValue().chunks);
+                c.put("done", entry.getValue().done);
+                jsonClasses.put(entry.getKey(), c);
+            }
+            json.put("classes", jsonClasses);
+
+            File tmp = new File(file.getAbsolutePath() + ".tmp");
+            Files.write(tmp.toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | JSONException e) {
+            throw new IndexerException("Could not save the checkpoint " + file.getAbsolutePath(), e);
+        }
+        logger.debug("Checkpoint saved: stage " + stage + (progress != null ? ", " + progress.chunks + " chunks committed" : ""));
+    }
+
+    /**
+     * The indexing has finished, there is nothing left to resume
+     */
+    void delete() {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete the checkpoint " + file.getAbsolutePath());
+        }
+    }
+}
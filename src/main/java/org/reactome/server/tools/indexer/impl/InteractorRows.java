@@ -0,0 +1,225 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.interactors.model.Interaction;
+import org.reactome.server.interactors.model.InteractionDetails;
+import org.reactome.server.interactors.model.Interactor;
+import org.reactome.server.tools.indexer.model.InteractorSummary;
+import org.reactome.server.tools.indexer.model.ReactomeSummary;
+
+import java.io.Closeable;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Streams the interactors of the interactors database with their interactions already aggregated, one row per
+ * interactor, reading the whole database with a single query.
+ * <p>
+ * Every interaction is read in both directions, so the interactor is always interactor A, filtered by score and
+ * resource in SQL and sorted by accession, so the interactions of an interactor come one after the other and only
+ * the current row is in memory. Interactors not accepted and partners without Reactome summary are skipped while
+ * reading, without creating any object for them.
+ * <p>
+ * A partner found in several interactions gets the evidences of all of them and the best score. The interactions
+ * retrieved through the InteractionService are aggregated the same way by {@link #summarize(List, Function)}.
+ */
+class InteractorRows implements Closeable {
+
+    // Tables and columns of the interactor-core schema read by the query
+    private static final Map<String, List<String>> SCHEMA = new LinkedHashMap<>();
+    static {
+        SCHEMA.put("INTERACTOR", Arrays.asList("ID", "ACC", "ALIAS", "TAXID"));
+        SCHEMA.put("INTERACTION", Arrays.asList("ID", "INTERACTOR_A", "INTERACTOR_B", "MISCORE", "INTERACTION_RESOURCE_ID"));
+        SCHEMA.put("INTERACTION_DETAILS", Arrays.asList("INTERACTION_ID", "INTERACTION_AC"));
+        SCHEMA.put("INTERACTION_RESOURCE", Arrays.asList("ID", "NAME"));
+    }
+
+    private static final String INTERACTIONS = "" +
+            "SELECT ID, %s AS A, %s AS B, MISCORE FROM INTERACTION " +
+            "WHERE MISCORE >= ? AND INTERACTION_RESOURCE_ID IN (SELECT ID FROM INTERACTION_RESOURCE WHERE UPPER(NAME) = UPPER(?))";
+
+    private static final String QUERY = "" +
+            "SELECT IA.ACC, IA.ALIAS, IA.TAXID, IB.ACC, I.ID, I.MISCORE, D.INTERACTION_AC " +
+            "FROM (" + String.format(INTERACTIONS, "INTERACTOR_A", "INTERACTOR_B") + " " +
+            "      UNION ALL " +
+            "      " + String.format(INTERACTIONS, "INTERACTOR_B", "INTERACTOR_A") + " AND INTERACTOR_A <> INTERACTOR_B) I " +
+            "INNER JOIN INTERACTOR IA ON IA.ID = I.A " +
+            "INNER JOIN INTERACTOR IB ON IB.ID = I.B " +
+            "LEFT JOIN INTERACTION_DETAILS D ON D.INTERACTION_ID = I.ID " +
+            "ORDER BY IA.ACC, IB.ACC, I.ID, D.INTERACTION_AC";
+
+    private static final int FETCH_SIZE = 10000;
+
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final Predicate<String> interactors;
+    private final Function<String, ReactomeSummary> partners;
+    // First result row not consumed yet, false once the result set is exhausted
+    private boolean pending;
+
+    /**
+     * @param resource     interaction resource, e.g. static
+     * @param minimumScore interactions below this score are not read
+     * @param interactors  accessions of the interactors to be read
+     * @param partners     Reactome summary of a partner accession, null to skip the partner
+     */
+    InteractorRows(Connection connection, String resource, double minimumScore, Predicate<String> interactors, Function<String, ReactomeSummary> partners) throws SQLException {
+        this.interactors = interactors;
+        this.partners = partners;
+        statement = connection.prepareStatement(QUERY, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            statement.setFetchSize(FETCH_SIZE);
+            // Both directions of the interactions
+            for (int i = 0; i < 2; i++) {
+                statement.setDouble(2 * i + 1, minimumScore);
+                statement.setString(2 * i + 2, resource);
+            }
+            resultSet = statement.executeQuery();
+            pending = resultSet.next();
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the database has the tables and columns read by this class
+     */
+    static boolean isSupported(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (Map.Entry<String, List<String>> table : SCHEMA.entrySet()) {
+            Set<String> columns = new HashSet<>();
+            try (ResultSet rs = metaData.getColumns(null, null, table.getKey(), null)) {
+                while (rs.next()) columns.add(rs.getString("COLUMN_NAME").toUpperCase());
+            }
+            if (!columns.containsAll(table.getValue())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the next accepted interactor with at least one partner, null when there are no more
+     */
+    Row next() throws SQLException {
+        while (pending) {
+            String accession = resultSet.getString(1);
+            if (accession == null || !interactors.test(accession)) {
+                skip(accession);
+                continue;
+            }
+            Interactor interactor = new Interactor();
+            interactor.setAcc(accession);
+            interactor.setAlias(resultSet.getString(2));
+            int taxId = resultSet.getInt(3);
+            interactor.setTaxid(resultSet.wasNull() ? -1 : taxId);
+
+            // Rows are sorted by partner and interaction, the interactions of a partner come one after the other
+            Set<InteractorSummary> summaries = new LinkedHashSet<>();
+            String partner = null;
+            long interaction = -1;
+            InteractorSummary summary = null;
+            while (pending && accession.equals(resultSet.getString(1))) {
+                String current = resultSet.getString(4);
+                long id = resultSet.getLong(5);
+                if (current != null && !current.equals(partner)) {
+                    partner = current;
+                    interaction = -1;
+                    ReactomeSummary reactomeSummary = partners.apply(partner);
+                    summary = null;
+                    if (reactomeSummary != null) {
+                        summary = new InteractorSummary();
+                        summary.setAccession(partner);
+                        summary.setReactomeSummary(reactomeSummary);
+                        summaries.add(summary);
+                    }
+                }
+                if (summary != null) {
+                    if (id != interaction) {
+                        interaction = id;
+                        keepBestScore(summary, resultSet.getDouble(6));
+                    }
+                    addEvidence(summary, resultSet.getString(7));
+                }
+                pending = resultSet.next();
+            }
+            if (!summaries.isEmpty()) return new Row(interactor, summaries);
+        }
+        return null;
+    }
+
+    /**
+     * @param interactions interactions of the same interactor A, as returned by the InteractionService
+     * @param partners     Reactome summary of a partner accession, null to skip the partner
+     * @return the summary of each partner in Reactome, sorted by accession, aggregated as {@link #next()} does
+     */
+    static Set<InteractorSummary> summarize(List<Interaction> interactions, Function<String, ReactomeSummary> partners) {
+        Map<String, InteractorSummary> summaries = new TreeMap<>();
+        for (Interaction interaction : interactions) {
+            String partner = interaction.getInteractorB().getAcc();
+            InteractorSummary summary = summaries.get(partner);
+            if (summary == null) {
+                ReactomeSummary reactomeSummary = partners.apply(partner);
+                if (reactomeSummary == null) continue;
+                summary = new InteractorSummary();
+                summary.setAccession(partner);
+                summary.setReactomeSummary(reactomeSummary);
+                summaries.put(partner, summary);
+            }
+            keepBestScore(summary, interaction.getIntactScore());
+            for (InteractionDetails interactionDetails : interaction.getInteractionDetailsList()) {
+                addEvidence(summary, interactionDetails.getInteractionAc());
+            }
+        }
+        return new LinkedHashSet<>(summaries.values());
+    }
+
+    private static void keepBestScore(InteractorSummary summary, Double score) {
+        if (summary.getScore() == null || (score != null && score > summary.getScore())) summary.setScore(score);
+    }
+
+    // The same evidence may be found in both directions of an interaction
+    private static void addEvidence(InteractorSummary summary, String evidence) {
+        List<String> evidences = summary.getInteractionEvidences();
+        if (evidence != null && (evidences == null || !evidences.contains(evidence))) summary.addInteractionEvidences(evidence);
+    }
+
+    /**
+     * Moves past the rows of the given interactor
+     */
+    private void skip(String accession) throws SQLException {
+        do {
+            pending = resultSet.next();
+        } while (pending && Objects.equals(accession, resultSet.getString(1)));
+    }
+
+    @Override
+    public void close() {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // the result set is not needed anymore
+        }
+    }
+
+    /**
+     * Interactor A and the summary of each one of its partners in Reactome
+     */
+    static class Row {
+        private final Interactor interactor;
+        private final Set<InteractorSummary> summaries;
+
+        private Row(Interactor interactor, Set<InteractorSummary> summaries) {
+            this.interactor = interactor;
+            this.summaries = summaries;
+        }
+
+        Interactor getInteractor() {
+            return interactor;
+        }
+
+        Set<InteractorSummary> getSummaries() {
+            return summaries;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.model.ReactomeSummary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link AccessionStore} written to a file and memory-mapped, so only the pages being read are in memory.
+ * <p>
+ * The file holds the entries in accession order, followed by the offset of every entry and a footer:
+ * <pre>
+ * entry:  accession | hasSummary (byte) | ids | names     (strings and lists are prefixed by their length)
+ * footer: offsets position (int) | entries (int) | MAGIC (int)
+ * </pre>
+ * Accessions are found by binary search over the offsets. The file is deleted when the store is closed.
+ */
+class MappedAccessionStore implements AccessionStore {
+
+    private static final int MAGIC = 0x52414353; // RACS
+    private static final int FOOTER = 3 * Integer.BYTES;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int offsets;
+    private final int size;
+
+    private MappedAccessionStore(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int footer = (int) channel.size() - FOOTER;
+            if (footer < 0 || mapped.getInt(footer + 2 * Integer.BYTES) != MAGIC) {
+                throw new IOException(file.getAbsolutePath() + " is not an accession store");
+            }
+            buffer = mapped;
+            offsets = mapped.getInt(footer);
+            size = mapped.getInt(footer + Integer.BYTES);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getAccession(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return readString(offset(index));
+    }
+
+    @Override
+    public boolean contains(String accession) {
+        return find(accession) >= 0;
+    }
+
+    @Override
+    public ReactomeSummary get(String accession) {
+        int index = find(accession);
+        if (index < 0) return null;
+
+        // Only absolute reads, the buffer is shared by all the threads
+        int position = offset(index);
+        position += Short.BYTES + (buffer.getShort(position) & 0xFFFF);
+        if (buffer.get(position++) == 0) return null;
+
+        ReactomeSummary summary = new ReactomeSummary();
+        int ids = buffer.getInt(position);
+        position += Integer.BYTES;
+        for (int i = 0; i < ids; i++) {
+            String id = readString(position);
+            position += Short.BYTES + (buffer.getShort(position) & 0xFFFF);
+            summary.addId(id);
+        }
+        int names = buffer.getInt(position);
+        position += Integer.BYTES;
+        for (int i = 0; i < names; i++) {
+            String name = readString(position);
+            position += Short.BYTES + (buffer.getShort(position) & 0xFFFF);
+            summary.addName(name);
+        }
+        return summary;
+    }
+
+    /**
+     * @return index of the accession, negative if it is not in the store
+     */
+    private int find(String accession) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = readString(offset(mid)).compareTo(accession);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int offset(int index) {
+        return buffer.getInt(offsets + index * Integer.BYTES);
+    }
+
+    private String readString(int position) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + Short.BYTES + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released with the buffer, the file can be deleted already
+        if (!file.delete() && file.exists()) file.deleteOnExit();
+    }
+
+    static class Builder implements AccessionStore.Builder {
+        private final File file;
+        private final DataOutputStream out;
+        private int[] offsets = new int[1024];
+        private int size = 0;
+        private long position = 0;
+        private String last = null;
+
+        Builder(File file) throws IOException {
+            File folder = file.getAbsoluteFile().getParentFile();
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Could not create the folder " + folder.getAbsolutePath());
+            }
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        }
+
+        @Override
+        public void add(String accession, ReactomeSummary summary) throws IOException {
+            if (last != null && last.compareTo(accession) >= 0) {
+                throw new IllegalArgumentException("Accessions have to be added in ascending order: " + accession);
+            }
+            if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+            offsets[size++] = checkedPosition();
+            last = accession;
+
+            writeString(accession);
+            out.writeByte(summary == null ? 0 : 1);
+            position += Byte.BYTES;
+            if (summary != null) {
+                writeStrings(summary.getReactomeId());
+                writeStrings(summary.getReactomeName());
+            }
+        }
+
+        @Override
+        public AccessionStore build() throws IOException {
+            int offsetsPosition = checkedPosition();
+            try {
+                for (int i = 0; i < size; i++) {
+                    out.writeInt(offsets[i]);
+                }
+                out.writeInt(offsetsPosition);
+                out.writeInt(size);
+                out.writeInt(MAGIC);
+            } finally {
+                out.close();
+            }
+            offsets = null;
+            return new MappedAccessionStore(file);
+        }
+
+        private void writeStrings(List<String> values) throws IOException {
+            if (values == null) {
+                out.writeInt(0);
+                position += Integer.BYTES;
+                return;
+            }
+            out.writeInt(values.size());
+            position += Integer.BYTES;
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) bytes = Arrays.copyOf(bytes, 0xFFFF);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            position += Short.BYTES + bytes.length;
+        }
+
+        private int checkedPosition() throws IOException {
+            // Offsets are ints, a mapped buffer cannot be bigger than 2GB anyway
+            if (position + (long) size * Integer.BYTES + FOOTER > Integer.MAX_VALUE) {
+                out.close();
+                throw new IOException(file.getAbsolutePath() + " is too big for an accession store");
+            }
+            return (int) position;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.reactome.server.tools.indexer.impl;
 
-import org.apache.commons.lang.StringEscapeUtils;
 import org.reactome.server.tools.indexer.exception.IndexerException;
 import org.reactome.server.tools.indexer.model.CrossReference;
 import org.reactome.server.tools.indexer.model.IndexDocument;
@@ -9,6 +8,7 @@ import java.io.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by:
@@ -20,13 +20,24 @@ class Marshaller {
 
     private static final String INDENT = "  ";
     private static final String NEW_LINE = "\n";
+    // Indentation of the entries, their elements and the elements content
+    private static final String I = "    ";
+    private static final String II = "      ";
+    private static final String III = "        ";
 
     private final String name;
     private final String description;
 
-    private Writer writer;
+    private XmlStreamWriter writer;
 
     Marshaller(File output, String name, String description) {
+        this(output, name, description, false);
+    }
+
+    /**
+     * @param gzip compresses the output as it is written
+     */
+    Marshaller(File output, String name, String description, boolean gzip) {
         this.name = name;
         this.description = description;
 
@@ -49,229 +60,248 @@ class Marshaller {
         }
 
         try {
-            this.writer = new BufferedWriter(new FileWriter(output));
+            OutputStream out = new FileOutputStream(output);
+            this.writer = new XmlStreamWriter(gzip ? new GZIPOutputStream(out, 64 * 1024) : out);
         } catch (IOException e) {
             throw new IllegalArgumentException("Cannot write on " + output.getAbsolutePath(), e);
         }
 
     }
 
-    void writeHeader(int releaseNumber) throws IndexerException {
+    /**
+     * Writes to the given stream, e.g. when the output is not a file
+     */
+    Marshaller(OutputStream out, String name, String description) {
+        this.name = name;
+        this.description = description;
+        this.writer = new XmlStreamWriter(out);
+    }
+
+    synchronized void writeHeader(int releaseNumber) throws IndexerException {
         try {
-            writer.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + NEW_LINE);
-            writer.write("<database>" + NEW_LINE);
-            writer.write(INDENT + "<name>" + name + "</name>" + NEW_LINE);
-            writer.write(INDENT + "<description>" + description + "</description>" + NEW_LINE);
-            writer.write(INDENT + "<release>" + releaseNumber + "</release>" + NEW_LINE);
-            writer.write(INDENT + "<release_date>" + getCurrentDate() + "</release_date>" + NEW_LINE);
-            writer.write(INDENT + "<entries>" + NEW_LINE);
+            writer.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>").write(NEW_LINE);
+            writer.write("<database>").write(NEW_LINE);
+            writer.write(INDENT).write("<name>").write(name).write("</name>").write(NEW_LINE);
+            writer.write(INDENT).write("<description>").write(description).write("</description>").write(NEW_LINE);
+            writer.write(INDENT).write("<release>").write(releaseNumber).write("</release>").write(NEW_LINE);
+            writer.write(INDENT).write("<release_date>").write(getCurrentDate()).write("</release_date>").write(NEW_LINE);
+            writer.write(INDENT).write("<entries>").write(NEW_LINE);
         } catch (IOException e) {
             throw new IndexerException(e);
         }
     }
 
-    void writeEntry(IndexDocument document) throws IndexerException {
-        final String i = INDENT + INDENT;
-        final String ii = INDENT + INDENT + INDENT;
-        final String iii = INDENT + INDENT + INDENT + INDENT;
-
+    synchronized void writeEntry(IndexDocument document) throws IndexerException {
         try {
-            writer.write(i + "<entry id=\"" + document.getDbId() + "\">" + NEW_LINE);
+            writer.write(I).write("<entry id=\"").write(document.getDbId()).write("\">").write(NEW_LINE);
 
-            String escaped = StringEscapeUtils.escapeXml(document.getName());
-            writer.write(ii + "<name>" + escaped + "</name>" + NEW_LINE);
+            writer.write(II).write("<name>").writeEscaped(document.getName()).write("</name>").write(NEW_LINE);
             if (document.getSummation() != null) {
-                String noHTMLString = document.getSummation().replaceAll("<.*?>", "");
-                String noHtmlAndEscaped = StringEscapeUtils.escapeXml(noHTMLString);
-                writer.write(ii + "<description>" + noHtmlAndEscaped + "</description>" + NEW_LINE);
+                writer.write(II).write("<description>").writeEscapedWithoutTags(document.getSummation()).write("</description>").write(NEW_LINE);
             }
 
-            writer.write(ii + "<cross_references>" + NEW_LINE);
+            writer.write(II).write("<cross_references>").write(NEW_LINE);
 
             if (document.getReferenceIdentifiers() != null) {
-                writeRef(document.getDatabaseName(), document.getReferenceIdentifiers().get(0), iii);
+                writeRef(document.getDatabaseName(), document.getReferenceIdentifiers().get(0));
             }
             if (document.getTaxId() != null) {
                 for (String taxId : document.getTaxId()) {
-                    writeRef("TAXONOMY", taxId, iii);
+                    writeRef("TAXONOMY", taxId);
                 }
             }
             if (document.getCompartmentAccession() != null && !document.getCompartmentAccession().isEmpty()) {
                 for (String accession : document.getCompartmentAccession()) {
                     if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
+                        writeRef("GO", accession);
                     }
                 }
             }
             if (document.getGoMolecularFunctionAccession() != null && !document.getGoMolecularFunctionAccession().isEmpty()) {
                 for (String accession : document.getGoMolecularFunctionAccession()) {
                     if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
+                        writeRef("GO", accession);
                     }
                 }
             }
             if (document.getGoCellularComponentAccession() != null) {
                 for (String accession : document.getGoCellularComponentAccession()) {
                     if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
+                        writeRef("GO", accession);
                     }
                 }
             }
             if (document.getGoBiologicalProcessAccession() != null) {
                 for (String accession : document.getGoBiologicalProcessAccession()) {
                     if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
+                        writeRef("GO", accession);
                     }
                 }
             }
             if (document.getDiseaseId() != null && !document.getDiseaseId().isEmpty()) {
                 for (String diseaseId : document.getDiseaseId()) {
                     if (diseaseId.contains("doid:")) {
-                        writeRef("DOID", diseaseId, iii);
+                        writeRef("DOID", diseaseId);
                     }
                 }
             }
 
             if (document.getLiteratureReferencePubMedId() != null && !document.getLiteratureReferencePubMedId().isEmpty()) {
                 for (String literatureReferencePubMedId : document.getLiteratureReferencePubMedId()) {
-                    writeRef("PubMed", literatureReferencePubMedId, iii);
+                    writeRef("PubMed", literatureReferencePubMedId);
                 }
             }
 
             if (document.getAllCrossReferences() != null && !document.getAllCrossReferences().isEmpty()) {
                 for (CrossReference crossReference : document.getAllCrossReferences()) {
-                    writeRef(crossReference.getDbName(), crossReference.getId(), iii);
+                    writeRef(crossReference.getDbName(), crossReference.getId());
                 }
             }
 
-            writer.write(ii + "</cross_references>" + NEW_LINE);
+            writer.write(II).write("</cross_references>").write(NEW_LINE);
 
 
-            writer.write(ii + "<additional_fields>" + NEW_LINE);
+            writer.write(II).write("<additional_fields>").write(NEW_LINE);
 
             if (document.getSpecies() != null) {
                 for (String species : document.getSpecies()) {
-                    writeField("species", species, iii);
+                    writeField("species", species);
                 }
             }
 
             if (document.getRelatedSpecies() != null) {
                 for (String relatedSpecies : document.getRelatedSpecies()) {
-                    writeField("related_species", relatedSpecies, iii);
+                    writeField("related_species", relatedSpecies);
                 }
             }
             if (document.getDiseaseName() != null) {
                 for (String diseaseName : document.getDiseaseName()) {
-                    writeField("disease_name", diseaseName, iii);
+                    writeField("disease_name", diseaseName);
                 }
             }
             if (document.getDiseaseSynonyms() != null) {
                 for (String synonym : document.getDiseaseSynonyms()) {
-                    writeField("disease_synonym", synonym, iii);
+                    writeField("disease_synonym", synonym);
                 }
             }
-            writeField("type", document.getType(), iii);
+            writeField("type", document.getType());
             if (document.getStId() != null) {
-                writeField("stId", document.getStId(), iii);
+                writeField("stId", document.getStId());
             }
             if (document.getOldStId() != null) {
-                writeField("oldStId", document.getOldStId(), iii);
+                writeField("oldStId", document.getOldStId());
             }
             if (document.getSynonyms() != null && !document.getSynonyms().isEmpty()) {
                 for (String synonym : document.getSynonyms()) {
-                    writeField("synonym", synonym, iii);
+                    writeField("synonym", synonym);
                 }
             }
             if (document.getKeywords() != null && !document.getKeywords().isEmpty()) {
                 for (String keyword : document.getKeywords()) {
-                    writeField("keyword", keyword, iii);
+                    writeField("keyword", keyword);
                 }
             }
             if (document.getRegulatedEntity() != null) {
-                writeField("regulated_entity", document.getRegulatedEntity(), iii);
+                writeField("regulated_entity", document.getRegulatedEntity());
             }
             if (document.getRegulator() != null) {
-                writeField("regulator", document.getRegulator(), iii);
+                writeField("regulator", document.getRegulator());
             }
             if (document.getCompartmentName() != null && !document.getCompartmentName().isEmpty()) {
                 for (String compartment : document.getCompartmentName()) {
-                    writeField("compartment_name", compartment, iii);
+                    writeField("compartment_name", compartment);
                 }
             }
             if (document.getGoBiologicalProcessName() != null) {
-                writeField("go_biological_process_name", document.getGoBiologicalProcessName(), iii);
+                writeField("go_biological_process_name", document.getGoBiologicalProcessName());
             }
             if (document.getGoMolecularFunctionName() != null && !document.getGoMolecularFunctionName().isEmpty()) {
                 for (String goMolecularFunctionName : document.getGoMolecularFunctionName()) {
-                    writeField("go_molecular_function_name", goMolecularFunctionName, iii);
+                    writeField("go_molecular_function_name", goMolecularFunctionName);
                 }
             }
 
             if (document.getLiteratureReferenceTitle() != null && !document.getLiteratureReferenceTitle().isEmpty()) {
                 for (String literatureReferenceTitle : document.getLiteratureReferenceTitle()) {
-                    writeField("literature_reference_title", literatureReferenceTitle, iii);
+                    writeField("literature_reference_title", literatureReferenceTitle);
                 }
             }
             if (document.getReferenceName() != null) {
-                writeField("external_reference_name", document.getReferenceName(), iii);
+                writeField("external_reference_name", document.getReferenceName());
             }
             if (document.getReferenceSynonyms() != null && !document.getReferenceSynonyms().isEmpty()) {
                 for (String referenceSynonyms : document.getReferenceSynonyms()) {
-                    writeField("external_reference_synonym", referenceSynonyms, iii);
+                    writeField("external_reference_synonym", referenceSynonyms);
                 }
             }
             if (document.getReferenceGeneNames() != null && !document.getReferenceGeneNames().isEmpty()) {
                 for (String referenceGeneNames : document.getReferenceGeneNames()) {
-                    writeField("gene_names", referenceGeneNames, iii);
+                    writeField("gene_names", referenceGeneNames);
                 }
             }
             if (document.getReferenceOtherIdentifier() != null && !document.getReferenceOtherIdentifier().isEmpty()) {
                 for (String referenceOtherIdentifier : document.getReferenceOtherIdentifier()) {
-                    writeField("external_reference_other_identifier", referenceOtherIdentifier, iii);
+                    writeField("external_reference_other_identifier", referenceOtherIdentifier);
                 }
             }
             if (document.getInferredSummation() != null) {
-                String noHTMLString = document.getInferredSummation().replaceAll("<.*?>", "");
-                writeField("inferred_summation", noHTMLString, iii);
+                writer.write(III).write("<field name=\"inferred_summation\">").writeEscapedWithoutTags(document.getInferredSummation()).write("</field>").write(NEW_LINE);
             }
 
-            writer.write(ii + "</additional_fields>" + NEW_LINE);
+            writer.write(II).write("</additional_fields>").write(NEW_LINE);
 
-            writer.write(i + "</entry>" + NEW_LINE);
+            writer.write(I).write("</entry>").write(NEW_LINE);
         } catch (IOException e) {
             throw new IndexerException(e);
         }
     }
 
-    void writeFooter(int entriesCount) throws IndexerException {
+    synchronized void writeFooter(int entriesCount) throws IndexerException {
         try {
-            writer.write(INDENT + "</entries>" + NEW_LINE);
-            writer.write(INDENT + "<entry_count>" + entriesCount + "</entry_count>" + NEW_LINE);
-            writer.write("</database>" + NEW_LINE);
+            writer.write(INDENT).write("</entries>").write(NEW_LINE);
+            writer.write(INDENT).write("<entry_count>").write(entriesCount).write("</entry_count>").write(NEW_LINE);
+            writer.write("</database>").write(NEW_LINE);
             closeIndex();
         } catch (IOException e) {
             throw new IndexerException(e);
         }
     }
 
-    void flush() throws IOException {
+    synchronized void flush() throws IOException {
         writer.flush();
     }
 
+    /**
+     * Closes the output without writing the footer, when the entries could not be written
+     */
+    synchronized void close() {
+        try {
+            closeIndex();
+        } catch (IOException e) {
+            // the output is incomplete and discarded anyway
+        }
+    }
+
     private void closeIndex() throws IOException {
         writer.flush();
         writer.close();
     }
 
-    private void writeRef(String db, String id, String indent) throws IOException {
-        db = db.replaceAll("/", "_");
-        writer.write(indent + "<ref dbname=\"" + db + "\" dbkey=\"" + StringEscapeUtils.escapeXml(id) + "\" />" + NEW_LINE);
+    private void writeRef(String db, String id) throws IOException {
+        writer.write(III).write("<ref dbname=\"");
+        // '/' is not allowed in the database name
+        int from = 0;
+        for (int slash = db.indexOf('/'); slash >= 0; slash = db.indexOf('/', from)) {
+            writer.write(db.subSequence(from, slash)).write("_");
+            from = slash + 1;
+        }
+        writer.write(from == 0 ? db : db.substring(from));
+        writer.write("\" dbkey=\"").writeEscaped(id).write("\" />").write(NEW_LINE);
     }
 
-    private void writeField(String name, String text, String indent) throws IOException {
+    private void writeField(String name, String text) throws IOException {
         if (text != null) {
-            String escapedXml = StringEscapeUtils.escapeXml(text);
-            writer.write(indent + "<field name=\"" + name + "\">" + escapedXml + "</field>" + NEW_LINE);
+            writer.write(III).write("<field name=\"").write(name).write("\">").writeEscaped(text).write("</field>").write(NEW_LINE);
         }
     }
 
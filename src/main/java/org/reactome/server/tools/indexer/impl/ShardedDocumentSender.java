@@ -0,0 +1,171 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkCoreNodeProps;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.metrics.IndexerMetrics;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Sends every document to one of several shards, each one with its own {@link SolrDocumentSender} (client,
+ * request size and buffers). The documents of a call are sent to all their shards in parallel, so throughput
+ * grows with the number of shards.
+ * <p>
+ * The shards are either the leaders of a SolrCloud collection, where documents are routed by the router of the
+ * collection (the hash of their dbId for the default compositeId router), or the partitions of an
+ * {@link EmbeddedSolrIndex}, where they are routed by the hash of their dbId. Leaders are resolved from the cluster
+ * state when the sender is created. A leader elected later still receives the documents sent to the previous
+ * leader core, which forwards them.
+ */
+class ShardedDocumentSender implements DocumentSender, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private final Map<String, SolrDocumentSender> senders;
+    private final Function<IndexDocument, String> router;
+    private final List<SolrClient> clients;
+    private final ExecutorService executor;
+
+    /**
+     * @param senders     sender of every shard, by shard name
+     * @param router      name of the shard of a document
+     * @param clients     closed with this sender
+     * @param parallelism number of threads calling {@link #send(List)} at the same time
+     */
+    private ShardedDocumentSender(Map<String, SolrDocumentSender> senders, Function<IndexDocument, String> router, List<SolrClient> clients, int parallelism) {
+        this.senders = senders;
+        this.router = router;
+        this.clients = clients;
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(senders.size() * parallelism, r -> {
+            Thread t = new Thread(r, "solr-shard-sender-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param cloudClient  client of the collection, its default collection is the one indexed
+     * @param shardClients creates the client of a shard leader from its core url
+     * @param parallelism  number of threads calling {@link #send(List)} at the same time
+     */
+    static ShardedDocumentSender forCollection(CloudSolrClient cloudClient, Function<String, SolrClient> shardClients, int parallelism,
+                                               int minBatchBytes, int maxBatchBytes, File deadLetter, IndexerMetrics metrics) throws IndexerException {
+        String name = cloudClient.getDefaultCollection();
+        DocCollection collection;
+        try {
+            cloudClient.connect();
+            collection = cloudClient.getZkStateReader().getClusterState().getCollection(name);
+        } catch (SolrException e) {
+            throw new IndexerException("Could not read the state of the SolrCloud collection " + name, e);
+        }
+
+        Map<String, SolrDocumentSender> senders = new LinkedHashMap<>();
+        List<SolrClient> clients = new ArrayList<>();
+        for (Slice slice : collection.getActiveSlices()) {
+            Replica leader = slice.getLeader();
+            if (leader == null) {
+                closeClients(clients);
+                throw new IndexerException("Shard " + slice.getName() + " of " + name + " has no leader");
+            }
+            String url = new ZkCoreNodeProps(leader).getCoreUrl();
+            SolrClient client = shardClients.apply(url);
+            clients.add(client);
+            senders.put(slice.getName(), new SolrDocumentSender(client, minBatchBytes, maxBatchBytes, deadLetter, metrics));
+            logger.info("Shard " + slice.getName() + " of " + name + " is indexed through " + url);
+        }
+        if (senders.isEmpty()) {
+            throw new IndexerException("The SolrCloud collection " + name + " has no active shards");
+        }
+
+        Function<IndexDocument, String> router = document -> collection.getRouter().getTargetSlice(document.getDbId(), null, null, null, collection).getName();
+        return new ShardedDocumentSender(senders, router, clients, parallelism);
+    }
+
+    /**
+     * @param partitions  clients of the partitions, they are not closed by this sender
+     * @param parallelism number of threads calling {@link #send(List)} at the same time
+     */
+    static ShardedDocumentSender forPartitions(List<SolrClient> partitions, int parallelism,
+                                               int minBatchBytes, int maxBatchBytes, File deadLetter, IndexerMetrics metrics) {
+        Map<String, SolrDocumentSender> senders = new LinkedHashMap<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            senders.put(String.valueOf(i), new SolrDocumentSender(partitions.get(i), minBatchBytes, maxBatchBytes, deadLetter, metrics));
+        }
+        int n = partitions.size();
+        Function<IndexDocument, String> router = document -> String.valueOf(Math.floorMod(document.getDbId().hashCode(), n));
+        return new ShardedDocumentSender(senders, router, Collections.emptyList(), parallelism);
+    }
+
+    @Override
+    public void send(List<IndexDocument> documents) throws IndexerException {
+        Map<String, List<IndexDocument>> shards = new HashMap<>();
+        for (IndexDocument document : documents) {
+            shards.computeIfAbsent(router.apply(document), s -> new ArrayList<>()).add(document);
+        }
+
+        List<Future<Void>> futures = new ArrayList<>(shards.size());
+        for (Map.Entry<String, List<IndexDocument>> shard : shards.entrySet()) {
+            SolrDocumentSender sender = senders.get(shard.getKey());
+            futures.add(executor.submit(() -> {
+                sender.send(shard.getValue());
+                return null;
+            }));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IndexerException("Interrupted while sending documents to the shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IndexerException) throw (IndexerException) cause;
+            throw new IndexerException("Could not send documents to a shard", cause);
+        }
+    }
+
+    @Override
+    public int getRejected() {
+        int rejected = 0;
+        for (SolrDocumentSender sender : senders.values()) {
+            rejected += sender.getRejected();
+        }
+        return rejected;
+    }
+
+    /**
+     * Stops the threads and closes the shard clients. The cloud client is not closed.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        closeClients(clients);
+    }
+
+    private static void closeClients(List<SolrClient> clients) {
+        for (SolrClient client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the client of a shard", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.tools.indexer.model.SpeciesResult;
+import org.reactome.server.tools.indexer.util.LongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Species of the SimpleEntities, taken from the reactions they take part in.
+ * <p>
+ * There are only a few hundred species names for tens of thousands of SimpleEntities, so every name is kept once
+ * and each SimpleEntity only holds the ids of its species in a primitive long keyed map. The graph is read in
+ * pages of SimpleEntities instead of a single query returning all of them at once.
+ */
+class SimpleEntitySpecies {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final int PAGE_SIZE = 5000;
+
+    private static final String DB_IDS_QUERY = "MATCH (n:SimpleEntity) RETURN n.dbId AS dbId ORDER BY dbId";
+
+    private static final String SPECIES_QUERY = "" +
+            "UNWIND {dbIds} AS dbId " +
+            "MATCH (n:SimpleEntity{dbId:dbId})<-[:regulatedBy|regulator|physicalEntity|entityFunctionalStatus|catalystActivity|hasMember|hasCandidate|hasComponent|repeatedUnit|input|output*]-(:ReactionLikeEvent)-[:species]->(s:Species) " +
+            "WITH n, COLLECT(DISTINCT s.displayName) AS species " +
+            "RETURN n.dbId AS dbId, species";
+
+    private static final int[] NONE = new int[0];
+
+    private final String[] names;
+    private final LongHashMap<int[]> species;
+
+    private SimpleEntitySpecies(String[] names, LongHashMap<int[]> species) {
+        this.names = names;
+        this.species = species;
+    }
+
+    /**
+     * @return the species of every SimpleEntity, none if they could not be retrieved
+     */
+    static SimpleEntitySpecies load(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
+        long start = System.currentTimeMillis();
+        logger.info("Caching SimpleEntity Species");
+
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        LongHashMap<int[]> species;
+        try {
+            List<Long> dbIds = new ArrayList<>(advancedDatabaseObjectService.customQueryResults(Long.class, DB_IDS_QUERY, null));
+            species = new LongHashMap<>(dbIds.size());
+            Map<String, Object> params = new HashMap<>();
+            for (int from = 0; from < dbIds.size(); from += PAGE_SIZE) {
+                params.put("dbIds", dbIds.subList(from, Math.min(from + PAGE_SIZE, dbIds.size())));
+                for (SpeciesResult result : advancedDatabaseObjectService.customQueryForObjects(SpeciesResult.class, SPECIES_QUERY, params)) {
+                    species.put(result.getDbId(), intern(result.getSpecies(), ids, names));
+                }
+            }
+            species.trim();
+        } catch (CustomQueryException e) {
+            logger.error("Could not cache fireworks species", e);
+            return new SimpleEntitySpecies(new String[0], new LongHashMap<>());
+        }
+
+        logger.info("Caching SimpleEntity Species is done: " + species.size() + " SimpleEntities in " + names.size() + " species (" + (System.currentTimeMillis() - start) / 1000 + "s)");
+        return new SimpleEntitySpecies(names.toArray(new String[names.size()]), species);
+    }
+
+    private static int[] intern(Collection<String> species, Map<String, Integer> ids, List<String> names) {
+        if (species == null || species.isEmpty()) return NONE;
+        int[] rtn = new int[species.size()];
+        int i = 0;
+        for (String name : species) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            rtn[i++] = id;
+        }
+        return rtn;
+    }
+
+    /**
+     * @return species of the SimpleEntity, null if there are none
+     */
+    Set<String> get(long dbId) {
+        int[] ids = species.get(dbId);
+        if (ids == null || ids.length == 0) return null;
+        Set<String> rtn = new HashSet<>(ids.length * 2);
+        for (int id : ids) {
+            rtn.add(names[id]);
+        }
+        return rtn;
+    }
+}
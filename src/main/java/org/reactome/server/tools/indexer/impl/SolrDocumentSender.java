@@ -0,0 +1,272 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.ContentStreamUpdateRequest;
+import org.apache.solr.client.solrj.request.JavaBinUpdateRequestCodec;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.util.ContentStreamBase;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.metrics.Histogram;
+import org.reactome.server.tools.indexer.metrics.IndexerMetrics;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends documents to Solr in requests sized by their estimated payload.
+ * <p>
+ * The target request size starts at the minimum and follows the observed Solr latency: it grows while requests
+ * are answered faster than {@link #TARGET_LATENCY} and shrinks when they are slower, always within the given
+ * bounds. When Solr rejects the content of a request (400 bad request, 409 conflict or 413 too large) it is split
+ * in halves which are sent again, so a bad document is isolated in a logarithmic number of requests. Documents
+ * rejected on their own are written to the dead letter file, one line per document with the error and the whole
+ * document as Solr JSON, so it can be sent again once fixed. Any other failure (Solr unreachable, authentication,
+ * core not found, rate limited, 5xx) is retried with an exponential backoff and then thrown, so the documents are
+ * never acknowledged without being in Solr.
+ * <p>
+ * Documents are converted by {@link IndexDocumentConverter} and each request is encoded as javabin into a buffer
+ * owned by the sending thread, which is reused for its next requests.
+ */
+class SolrDocumentSender implements DocumentSender {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final long TARGET_LATENCY = 2000; // ms
+    private static final double SMOOTHING = 0.3;
+    private static final String UPDATE_PATH = "/update";
+    private static final String JAVABIN_CONTENT_TYPE = "application/javabin";
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_WAIT = 1000; // ms, doubled after every failed attempt
+
+    private final SolrClient solrClient;
+    private final int minBatchBytes;
+    private final int maxBatchBytes;
+    private final File deadLetter;
+    private final Histogram addLatency;
+    private final Histogram requestDocuments;
+    private final Histogram requestBytes;
+
+    private volatile int targetBatchBytes;
+    private final ThreadLocal<JavabinBuffer> buffers = ThreadLocal.withInitial(JavabinBuffer::new);
+    private int rejected = 0;
+
+    /**
+     * @param minBatchBytes lower bound of the estimated request payload
+     * @param maxBatchBytes upper bound of the estimated request payload
+     * @param deadLetter    file where the rejected documents are appended, one JSON object per line
+     * @param metrics       records the latency and size of the accepted requests
+     */
+    SolrDocumentSender(SolrClient solrClient, int minBatchBytes, int maxBatchBytes, File deadLetter, IndexerMetrics metrics) {
+        if (minBatchBytes < 1 || maxBatchBytes < minBatchBytes) {
+            throw new IllegalArgumentException("Invalid Solr batch bounds: " + minBatchBytes + " - " + maxBatchBytes);
+        }
+        this.solrClient = solrClient;
+        this.minBatchBytes = minBatchBytes;
+        this.maxBatchBytes = maxBatchBytes;
+        this.deadLetter = deadLetter;
+        this.targetBatchBytes = minBatchBytes;
+        this.addLatency = metrics.latency(IndexerMetrics.SOLR_ADD);
+        this.requestDocuments = metrics.size(IndexerMetrics.SOLR_BATCH_DOCUMENTS, "documents");
+        this.requestBytes = metrics.size(IndexerMetrics.SOLR_BATCH_BYTES, "bytes");
+    }
+
+    /**
+     * Sends the documents in as many requests as the current target size requires. Safe to be called concurrently.
+     */
+    @Override
+    public void send(List<IndexDocument> documents) throws IndexerException {
+        List<SolrInputDocument> batch = new ArrayList<>();
+        List<IndexDocument> beans = new ArrayList<>();
+        long batchBytes = 0;
+        for (IndexDocument document : documents) {
+            SolrInputDocument solrDocument = IndexDocumentConverter.toSolrInputDocument(document);
+            batch.add(solrDocument);
+            beans.add(document);
+            batchBytes += estimateBytes(solrDocument);
+            if (batchBytes >= targetBatchBytes) {
+                sendBatch(batch, beans, batchBytes);
+                batch = new ArrayList<>();
+                beans = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty()) sendBatch(batch, beans, batchBytes);
+    }
+
+    @Override
+    public synchronized int getRejected() {
+        return rejected;
+    }
+
+    private void sendBatch(List<SolrInputDocument> batch, List<IndexDocument> beans, long batchBytes) throws IndexerException {
+        long wait = RETRY_WAIT;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            Exception failure;
+            try {
+                int payload = add(batch);
+                long latency = System.nanoTime() - start;
+                addLatency.record(latency);
+                requestDocuments.record(batch.size());
+                requestBytes.record(payload);
+                adjustTarget(batchBytes, TimeUnit.NANOSECONDS.toMillis(latency));
+                logger.debug(batch.size() + " Documents successfully added to SolR");
+                return;
+            } catch (SolrException e) {
+                if (isRejected(e)) {
+                    bisect(batch, beans, batchBytes, e);
+                    return;
+                }
+                failure = e;
+            } catch (IOException | SolrServerException e) {
+                failure = e;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IndexerException("Could not add a batch of " + batch.size() + " documents to Solr after " + attempt + " attempts", failure);
+            }
+            logger.warn("Could not add a batch of " + batch.size() + " documents to Solr, trying again in " + wait + "ms: " + failure.getMessage());
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IndexerException("Interrupted while waiting to send documents to Solr again", e);
+            }
+            wait *= 2;
+        }
+    }
+
+    /**
+     * @return true if Solr has rejected the documents themselves, not the request for a reason sending them again may fix
+     */
+    private static boolean isRejected(SolrException e) {
+        int code = e.code();
+        return code == SolrException.ErrorCode.BAD_REQUEST.code || code == SolrException.ErrorCode.CONFLICT.code || code == 413;
+    }
+
+    /**
+     * Solr has rejected the batch, its halves are sent again until the rejected documents are on their own
+     */
+    private void bisect(List<SolrInputDocument> batch, List<IndexDocument> beans, long batchBytes, SolrException e) throws IndexerException {
+        if (batch.size() == 1) {
+            reject(beans.get(0), batch.get(0), e);
+            return;
+        }
+        logger.warn("Solr rejected a batch of " + batch.size() + " documents, splitting it: " + e.getMessage());
+        int half = batch.size() / 2;
+        sendBatch(batch.subList(0, half), beans.subList(0, half), batchBytes / 2);
+        sendBatch(batch.subList(half, batch.size()), beans.subList(half, beans.size()), batchBytes - batchBytes / 2);
+    }
+
+    /**
+     * @return size of the javabin payload sent
+     */
+    private int add(List<SolrInputDocument> batch) throws IOException, SolrServerException {
+        UpdateRequest update = new UpdateRequest();
+        update.add(batch);
+
+        JavabinBuffer buffer = buffers.get();
+        buffer.reset();
+        new JavaBinUpdateRequestCodec().marshal(update, buffer);
+
+        ContentStreamUpdateRequest request = new ContentStreamUpdateRequest(UPDATE_PATH);
+        request.addContentStream(buffer.toContentStream());
+        request.process(solrClient);
+
+        int payload = buffer.size();
+        // do not keep a buffer of an unusually big request
+        if (buffer.capacity() > 2 * maxBatchBytes) buffers.remove();
+        return payload;
+    }
+
+    /**
+     * Moves the target towards the size that would have taken {@link #TARGET_LATENCY}
+     */
+    private synchronized void adjustTarget(long batchBytes, long latency) {
+        if (batchBytes < targetBatchBytes / 2) return; // the tail of a chunk says little about the latency
+        double proposal = batchBytes * (double) TARGET_LATENCY / Math.max(1, latency);
+        double target = (1 - SMOOTHING) * targetBatchBytes + SMOOTHING * proposal;
+        targetBatchBytes = (int) Math.max(minBatchBytes, Math.min(maxBatchBytes, target));
+    }
+
+    private synchronized void reject(IndexDocument document, SolrInputDocument solrDocument, Exception e) {
+        rejected++;
+        logger.error("Could not add document", e);
+        logger.error("Document DBID: " + document.getDbId() + " Name " + document.getName());
+        try {
+            JSONObject fields = new JSONObject();
+            for (SolrInputField field : solrDocument) {
+                Collection<Object> values = field.getValues();
+                if (values == null || values.isEmpty()) continue;
+                fields.put(field.getName(), values.size() == 1 ? values.iterator().next() : new JSONArray(values));
+            }
+            JSONObject line = new JSONObject();
+            line.put("error", e.getMessage());
+            line.put("document", fields);
+            Files.write(deadLetter.toPath(), (line.toString() + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException | JSONException e1) {
+            logger.error("Could not write the rejected document " + document.getDbId() + " to " + deadLetter.getAbsolutePath(), e1);
+        }
+    }
+
+    /**
+     * Rough size of the document in the update request: field names and the string form of their values
+     */
+    private static long estimateBytes(SolrInputDocument document) {
+        long bytes = 0;
+        for (SolrInputField field : document) {
+            Collection<Object> values = field.getValues();
+            if (values == null) continue;
+            for (Object value : values) {
+                bytes += field.getName().length() + String.valueOf(value).length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Growable byte buffer that is read in place by the request, without copying it
+     */
+    private static class JavabinBuffer extends ByteArrayOutputStream {
+
+        JavabinBuffer() {
+            super(64 * 1024);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        ContentStream toContentStream() {
+            ContentStreamBase stream = new ContentStreamBase() {
+                @Override
+                public InputStream getStream() {
+                    return new ByteArrayInputStream(buf, 0, count);
+                }
+            };
+            stream.setContentType(JAVABIN_CONTENT_TYPE);
+            stream.setSize((long) count);
+            stream.setName("javabin");
+            return stream;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.reactome.server.tools.indexer.impl;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes XML text straight into a reusable byte buffer, escaping it on the way.
+ * <p>
+ * Everything written is plain ASCII: characters above 0x7f are written as numeric character references (as
+ * StringEscapeUtils.escapeXml does), so the output is valid for the ISO-8859-1 encoding declared in the header
+ * whatever the default charset is. Supplementary characters are written as a single reference of their code point.
+ * Nothing is allocated per call: text is escaped character by character and numbers are formatted in place.
+ */
+class XmlStreamWriter implements Flushable, Closeable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Longest write of a single character: "&#1114111;"
+    private static final int MAX_CHAR_BYTES = 10;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+
+    XmlStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the text as it is, i.e. it is expected to be markup or to have nothing to escape
+     */
+    XmlStreamWriter write(CharSequence text) throws IOException {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (count == BUFFER_SIZE) flushBuffer();
+                buffer[count++] = (byte) c;
+            } else {
+                i = writeReference(text, i);
+            }
+        }
+        return this;
+    }
+
+    XmlStreamWriter write(long number) throws IOException {
+        if (count + 20 > BUFFER_SIZE) flushBuffer();
+        if (number < 0) {
+            if (number == Long.MIN_VALUE) return write(Long.toString(number));
+            buffer[count++] = '-';
+            number = -number;
+        }
+        int digits = 1;
+        for (long n = number / 10; n > 0; n /= 10) digits++;
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        count += digits;
+        return this;
+    }
+
+    /**
+     * Writes the text escaping the five XML entities. Nothing is written for null
+     */
+    XmlStreamWriter writeEscaped(CharSequence text) throws IOException {
+        if (text == null) return this;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            i = writeEscaped(text, i);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the text without its HTML tags, escaping the rest. A tag is removed as {@code replaceAll("<.*?>", "")}
+     * would do: from a '&lt;' to the first '&gt;' after it, as long as there is no line terminator in between.
+     */
+    XmlStreamWriter writeEscapedWithoutTags(CharSequence text) throws IOException {
+        if (text == null) return this;
+        int length = text.length();
+        // every '<' before this position is known not to close before a line terminator
+        int unclosedUntil = -1;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '<' && i > unclosedUntil) {
+                int j = i + 1;
+                while (j < length && text.charAt(j) != '>' && !isLineTerminator(text.charAt(j))) j++;
+                if (j < length && text.charAt(j) == '>') {
+                    i = j;
+                    continue;
+                }
+                unclosedUntil = j;
+            }
+            i = writeEscaped(text, i);
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the index of the last character written
+     */
+    private int writeEscaped(CharSequence text, int i) throws IOException {
+        char c = text.charAt(i);
+        switch (c) {
+            case '&':
+                return writeEntity("&amp;", i);
+            case '<':
+                return writeEntity("&lt;", i);
+            case '>':
+                return writeEntity("&gt;", i);
+            case '"':
+                return writeEntity("&quot;", i);
+            case '\'':
+                return writeEntity("&apos;", i);
+            default:
+                if (c >= 0x80) return writeReference(text, i);
+                if (count == BUFFER_SIZE) flushBuffer();
+                buffer[count++] = (byte) c;
+                return i;
+        }
+    }
+
+    private int writeEntity(String entity, int i) throws IOException {
+        if (count + MAX_CHAR_BYTES > BUFFER_SIZE) flushBuffer();
+        for (int k = 0; k < entity.length(); k++) {
+            buffer[count++] = (byte) entity.charAt(k);
+        }
+        return i;
+    }
+
+    /**
+     * Writes the character at i (or the surrogate pair starting there) as a numeric character reference
+     *
+     * @return the index of the last character written
+     */
+    private int writeReference(CharSequence text, int i) throws IOException {
+        int codePoint = text.charAt(i);
+        if (Character.isHighSurrogate((char) codePoint) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+            codePoint = Character.toCodePoint((char) codePoint, text.charAt(++i));
+        }
+        if (count + MAX_CHAR_BYTES > BUFFER_SIZE) flushBuffer();
+        buffer[count++] = '&';
+        buffer[count++] = '#';
+        write(codePoint);
+        buffer[count++] = ';';
+        return i;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        // The characters not matched by '.' in a java.util.regex.Pattern without flags
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.reactome.server.tools.indexer.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, cheap enough to be recorded on every document.
+ * <p>
+ * Values are counted in logarithmic buckets, four per power of two, so percentiles are within 25% of the real
+ * value whatever the magnitude. Count, sum and maximum are exact. Values are reported divided by the scale,
+ * e.g. latencies recorded in nanoseconds and reported in milliseconds.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKETS_BITS = 2;
+    private static final int BUCKETS = 64 << SUB_BUCKETS_BITS;
+
+    private final String unit;
+    private final double scale;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param unit  unit of the reported values
+     * @param scale recorded values are divided by this when reported
+     */
+    Histogram(String unit, double scale) {
+        this.unit = unit;
+        this.scale = scale;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / scale / n;
+    }
+
+    public double getMax() {
+        return max.get() / scale;
+    }
+
+    public double getSum() {
+        return sum.sum() / scale;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, never above the maximum
+     */
+    public double getPercentile(double percentile) {
+        long n = count.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get()) / scale;
+            }
+        }
+        return getMax();
+    }
+
+    private static int bucket(long value) {
+        if (value == 0) return 0;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = exponent >= SUB_BUCKETS_BITS
+                ? (int) (value >>> (exponent - SUB_BUCKETS_BITS)) & ((1 << SUB_BUCKETS_BITS) - 1)
+                : (int) (value << (SUB_BUCKETS_BITS - exponent)) & ((1 << SUB_BUCKETS_BITS) - 1);
+        return (exponent << SUB_BUCKETS_BITS) + subBucket;
+    }
+
+    private static double upperBound(int bucket) {
+        int exponent = bucket >>> SUB_BUCKETS_BITS;
+        int subBucket = bucket & ((1 << SUB_BUCKETS_BITS) - 1);
+        // [(4 + sub) * 2^(e-2), (5 + sub) * 2^(e-2))
+        return ((1 << SUB_BUCKETS_BITS) + subBucket + 1) * Math.pow(2, exponent - SUB_BUCKETS_BITS);
+    }
+}
@@ -0,0 +1,237 @@
+package org.reactome.server.tools.indexer.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of one indexing run: histograms of the pipeline stages, documents per second of every schema class and
+ * the depths of the pipeline queues. They are exposed over JMX while the indexing runs and written as a JSON
+ * report at the end, so runs (and releases) can be compared.
+ */
+public class IndexerMetrics implements IndexerMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public static final String OBJECT_NAME = "org.reactome.server.tools.indexer:type=IndexerMetrics";
+
+    // Histograms recorded by the indexer
+    public static final String GRAPH_FETCH = "graph.fetch";           // projection: graph reads of a chunk
+    public static final String DOCUMENT_BUILD = "document.build";     // projection: documents of a chunk built from the rows
+    public static final String DOCUMENT_CREATE = "document.create";   // lazy-loading: graph reads and building of one document
+    public static final String SOLR_ADD = "solr.add";
+    public static final String SOLR_BATCH_DOCUMENTS = "solr.batch.documents";
+    public static final String SOLR_BATCH_BYTES = "solr.batch.bytes";
+    public static final String XML_WRITE = "xml.write";
+    public static final String QUEUE = "queue.";
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final long start = System.currentTimeMillis();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, ClassRate> classes = new LinkedHashMap<>();
+    private final Map<String, Integer> queueDepths = new ConcurrentHashMap<>();
+    private volatile String stage = "Starting";
+    private ObjectName objectName;
+
+    private static class ClassRate {
+        final long documents;
+        final long millis;
+
+        ClassRate(long documents, long millis) {
+            this.documents = documents;
+            this.millis = millis;
+        }
+
+        double perSecond() {
+            return millis == 0 ? 0 : documents * 1000d / millis;
+        }
+    }
+
+    /**
+     * @return histogram of durations recorded in nanoseconds and reported in milliseconds
+     */
+    public Histogram latency(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram("ms", NANOS_PER_MILLI));
+    }
+
+    /**
+     * @return histogram of values reported as they are recorded
+     */
+    public Histogram size(String name, String unit) {
+        return histograms.computeIfAbsent(name, n -> new Histogram(unit, 1));
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Records the documents of a schema class (or of the interactors) and the time it took to index them
+     */
+    public synchronized void classIndexed(String name, long documents, long millis) {
+        classes.put(name, new ClassRate(documents, millis));
+    }
+
+    /**
+     * Records a sample of the depth of a pipeline queue
+     */
+    public void queueDepth(String queue, int depth) {
+        queueDepths.put(queue, depth);
+        size(QUEUE + queue, "batches").record(depth);
+    }
+
+    /**
+     * The pipeline is closed, there is nothing waiting in its queues
+     */
+    public void queuesClosed() {
+        queueDepths.clear();
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server. A failure is only logged, metrics are not essential.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            logger.warn("The indexer metrics could not be registered in JMX", e);
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("The indexer metrics could not be unregistered from JMX", e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Writes the report of the run
+     *
+     * @param run description of the run (release, options...) added to the report as it is
+     */
+    public void writeReport(File file, Map<String, Object> run) {
+        try {
+            JSONObject report = new JSONObject();
+            for (Map.Entry<String, Object> entry : run.entrySet()) {
+                report.put(entry.getKey(), entry.getValue());
+            }
+            report.put("start", new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").format(new Date(start)));
+            report.put("elapsedSeconds", getElapsedSeconds());
+            report.put("documents", getDocuments());
+            report.put("documentsPerSecond", getDocumentsPerSecond());
+
+            JSONObject jsonClasses = new JSONObject();
+            synchronized (this) {
+                for (Map.Entry<String, ClassRate> entry : classes.entrySet()) {
+                    JSONObject c = new JSONObject();
+                    c.put("documents", entry.getValue().documents);
+                    c.put("seconds", entry.getValue().millis / 1000d);
+                    c.put("documentsPerSecond", entry.getValue().perSecond());
+                    jsonClasses.put(entry.getKey(), c);
+                }
+            }
+            report.put("classes", jsonClasses);
+
+            JSONObject jsonHistograms = new JSONObject();
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+                JSONObject h = new JSONObject();
+                h.put("unit", histogram.getUnit());
+                h.put("count", histogram.getCount());
+                h.put("sum", histogram.getSum());
+                h.put("mean", histogram.getMean());
+                for (double percentile : PERCENTILES) {
+                    h.put("p" + (int) percentile, histogram.getPercentile(percentile));
+                }
+                h.put("max", histogram.getMax());
+                jsonHistograms.put(entry.getKey(), h);
+            }
+            report.put("histograms", jsonHistograms);
+
+            Files.write(file.toPath(), report.toString(2).getBytes(StandardCharsets.UTF_8));
+            logger.info("Indexing report written to " + file.getAbsolutePath());
+        } catch (IOException | JSONException e) {
+            logger.error("The indexing report could not be written to " + file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public String getStage() {
+        return stage;
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return (System.currentTimeMillis() - start) / 1000;
+    }
+
+    @Override
+    public synchronized long getDocuments() {
+        long documents = 0;
+        for (ClassRate rate : classes.values()) {
+            documents += rate.documents;
+        }
+        return documents;
+    }
+
+    @Override
+    public double getDocumentsPerSecond() {
+        long millis = System.currentTimeMillis() - start;
+        return millis == 0 ? 0 : getDocuments() * 1000d / millis;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        return new LinkedHashMap<>(queueDepths);
+    }
+
+    @Override
+    public synchronized Map<String, Double> getClassRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (Map.Entry<String, ClassRate> entry : classes.entrySet()) {
+            rates.put(entry.getKey(), entry.getValue().perSecond());
+        }
+        return rates;
+    }
+
+    @Override
+    public Map<String, Double> getHistograms() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            values.put(entry.getKey() + ".count", (double) histogram.getCount());
+            values.put(entry.getKey() + ".mean", histogram.getMean());
+            for (double percentile : PERCENTILES) {
+                values.put(entry.getKey() + ".p" + (int) percentile, histogram.getPercentile(percentile));
+            }
+            values.put(entry.getKey() + ".max", histogram.getMax());
+        }
+        return values;
+    }
+}
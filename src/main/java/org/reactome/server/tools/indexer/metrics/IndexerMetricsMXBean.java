@@ -0,0 +1,32 @@
+package org.reactome.server.tools.indexer.metrics;
+
+import java.util.Map;
+
+/**
+ * Live view of a running indexing, registered as {@value IndexerMetrics#OBJECT_NAME}
+ */
+public interface IndexerMetricsMXBean {
+
+    String getStage();
+
+    long getElapsedSeconds();
+
+    long getDocuments();
+
+    double getDocumentsPerSecond();
+
+    /**
+     * @return batches waiting in each queue of the running pipeline, as last sampled
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * @return documents per second of every schema class already indexed
+     */
+    Map<String, Double> getClassRates();
+
+    /**
+     * @return count, mean, p50, p90, p99 and max of every histogram, e.g. "solr.add.p99"
+     */
+    Map<String, Double> getHistograms();
+}
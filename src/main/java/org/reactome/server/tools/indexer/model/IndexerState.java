@@ -0,0 +1,135 @@
+package org.reactome.server.tools.indexer.model;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * JAVA BEAN representing the state of the last indexing of a core. It lets the next (delta) indexing know
+ * which release has been indexed and up to which modification date the graph has been read.
+ * <p>
+ * The state is not a document of the core, so it never shows up in the searches. It is kept in a local JSON
+ * file holding one entry per core, so swapping two cores only swaps their entries.
+ */
+@SuppressWarnings("unused")
+public class IndexerState {
+
+    private String indexerRelease;
+    private String indexerLastModified;
+    private String indexerDate;
+
+    public IndexerState() {
+    }
+
+    public IndexerState(Integer release, String lastModified, String date) {
+        this.indexerRelease = release == null ? null : release.toString();
+        this.indexerLastModified = lastModified;
+        this.indexerDate = date;
+    }
+
+    public String getIndexerRelease() {
+        return indexerRelease;
+    }
+
+    public void setIndexerRelease(String indexerRelease) {
+        this.indexerRelease = indexerRelease;
+    }
+
+    /**
+     * @return the most recent InstanceEdit dateTime present in the graph when the index was built
+     */
+    public String getIndexerLastModified() {
+        return indexerLastModified;
+    }
+
+    public void setIndexerLastModified(String indexerLastModified) {
+        this.indexerLastModified = indexerLastModified;
+    }
+
+    public String getIndexerDate() {
+        return indexerDate;
+    }
+
+    public void setIndexerDate(String indexerDate) {
+        this.indexerDate = indexerDate;
+    }
+
+    /**
+     * @param core name of the core in the state file
+     * @return the state of the given core, null if there is none
+     */
+    public static IndexerState read(File file, String core) throws IndexerException {
+        JSONObject json = load(file).optJSONObject(core);
+        if (json == null) return null;
+        IndexerState state = new IndexerState();
+        state.indexerRelease = json.optString("release", null);
+        state.indexerLastModified = json.optString("lastModified", null);
+        state.indexerDate = json.optString("date", null);
+        return state;
+    }
+
+    /**
+     * @param state state of the given core, null to remove it
+     */
+    public static void write(File file, String core, IndexerState state) throws IndexerException {
+        JSONObject json = load(file);
+        try {
+            if (state == null) {
+                json.remove(core);
+            } else {
+                JSONObject entry = new JSONObject();
+                entry.put("release", state.indexerRelease);
+                entry.put("lastModified", state.indexerLastModified);
+                entry.put("date", state.indexerDate);
+                json.put(core, entry);
+            }
+        } catch (JSONException e) {
+            throw new IndexerException("Could not save the indexer state in " + file.getAbsolutePath(), e);
+        }
+        save(file, json);
+    }
+
+    /**
+     * The cores have been swapped, so are their states
+     */
+    public static void swap(File file, String core, String other) throws IndexerException {
+        JSONObject json = load(file);
+        Object state = json.remove(core);
+        Object otherState = json.remove(other);
+        try {
+            if (otherState != null) json.put(core, otherState);
+            if (state != null) json.put(other, state);
+        } catch (JSONException e) {
+            throw new IndexerException("Could not swap the indexer states in " + file.getAbsolutePath(), e);
+        }
+        save(file, json);
+    }
+
+    private static JSONObject load(File file) throws IndexerException {
+        if (!file.exists()) return new JSONObject();
+        try {
+            return new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            throw new IndexerException("Could not read the indexer state " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * The file is written aside and then moved, so it is never left half written
+     */
+    private static void save(File file, JSONObject json) throws IndexerException {
+        try {
+            File tmp = new File(file.getAbsolutePath() + ".tmp");
+            Files.write(tmp.toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | JSONException e) {
+            throw new IndexerException("Could not save the indexer state in " + file.getAbsolutePath(), e);
+        }
+    }
+}
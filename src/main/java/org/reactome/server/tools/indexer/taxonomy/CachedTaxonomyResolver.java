@@ -0,0 +1,100 @@
+package org.reactome.server.tools.indexer.taxonomy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the lineages resolved by another {@link TaxonomyResolver} in memory and, optionally, in a local file, so
+ * a taxon is only resolved once across indexings. The first line of the file is "# source" (see
+ * {@link TaxonomyResolver#getSource()}) and each one of the others is "taxId TAB ancestor,ancestor,...". Resolvers
+ * do not return the same lineages (e.g. Ensembl only gives the direct parent) and a taxonomy dump may have been
+ * updated, so a file written from another source is discarded.
+ * <p>
+ * Lineages that could not be resolved (null) are not cached. Empty lineages are only kept in memory, so a
+ * failed lookup is never persisted as a taxon without ancestors.
+ */
+public class CachedTaxonomyResolver implements TaxonomyResolver {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private final TaxonomyResolver resolver;
+    private final File file;
+    private final String header;
+    private final Map<Integer, int[]> lineages = new HashMap<>();
+
+    /**
+     * @param file where the lineages are kept between indexings, null to only keep them in memory
+     */
+    public CachedTaxonomyResolver(TaxonomyResolver resolver, File file) {
+        this.resolver = resolver;
+        this.file = file;
+        this.header = "# " + resolver.getSource();
+        if (file != null) load();
+    }
+
+    @Override
+    public synchronized int[] getLineage(int taxId) {
+        int[] lineage = lineages.get(taxId);
+        if (lineage == null) {
+            lineage = resolver.getLineage(taxId);
+            if (lineage != null) {
+                lineages.put(taxId, lineage);
+                if (file != null && lineage.length > 0) append(taxId, lineage);
+            }
+        }
+        return lineage;
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!header.equals(line)) {
+                logger.info("The taxonomy cache " + file.getAbsolutePath() + " was not written from " + resolver.getSource() + ", it is discarded");
+                reader.close();
+                Files.delete(file.toPath());
+                return;
+            }
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) continue;
+                String ancestors = line.substring(tab + 1);
+                String[] ids = ancestors.isEmpty() ? new String[0] : ancestors.split(",");
+                int[] lineage = new int[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    lineage[i] = Integer.parseInt(ids[i]);
+                }
+                lineages.put(Integer.parseInt(line.substring(0, tab)), lineage);
+            }
+            logger.info(lineages.size() + " taxonomy lineages loaded from " + file.getAbsolutePath());
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Could not read the taxonomy cache " + file.getAbsolutePath() + ", it is discarded and lineages will be resolved again", e);
+            lineages.clear();
+            if (!file.delete()) logger.warn("Could not delete the taxonomy cache " + file.getAbsolutePath());
+        }
+    }
+
+    private void append(int taxId, int[] lineage) {
+        StringBuilder line = new StringBuilder();
+        if (!file.exists()) line.append(header).append('\n');
+        line.append(taxId).append('\t');
+        for (int i = 0; i < lineage.length; i++) {
+            if (i > 0) line.append(',');
+            line.append(lineage[i]);
+        }
+        line.append('\n');
+        try {
+            Files.write(file.toPath(), line.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Could not write the taxonomy cache " + file.getAbsolutePath(), e);
+        }
+    }
+}
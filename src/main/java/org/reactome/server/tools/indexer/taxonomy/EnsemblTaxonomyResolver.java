@@ -0,0 +1,71 @@
+package org.reactome.server.tools.indexer.taxonomy;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Queries Ensembl REST API in order to get the parent of a taxon. Only the direct parent is
+ * part of the lineage, which avoids one request per ancestor.
+ */
+public class EnsemblTaxonomyResolver implements TaxonomyResolver {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final String URL = "http://rest.ensembl.org/taxonomy/id/";
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long TOO_MANY_REQUESTS_WAIT = 50000;
+
+    @Override
+    public int[] getLineage(int taxId) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(URL + taxId).openConnection();
+                connection.setRequestProperty("Content-Type", "application/json");
+                int status = connection.getResponseCode();
+                if (status == 429) {
+                    // If we hammer ensembl server than we get an 429 STATUS CODE, if that occurs we just wait 50sec.
+                    logger.info("Ensembl is rate limiting the taxonomy requests, waiting before trying again");
+                    Thread.sleep(TOO_MANY_REQUESTS_WAIT);
+                    continue;
+                }
+                if (status == HttpURLConnection.HTTP_BAD_REQUEST || status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    logger.info("Taxomony ID does not exist: " + taxId);
+                    return new int[0];
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    logger.warn("Could not retrieve the taxonomy " + taxId + " from Ensembl: HTTP " + status);
+                    return null;
+                }
+                try (InputStream response = connection.getInputStream()) {
+                    JSONObject jsonObject = new JSONObject(IOUtils.toString(response, "UTF-8"));
+                    JSONObject parent = jsonObject.optJSONObject("parent");
+                    if (parent == null) {
+                        logger.info("Taxomony ID " + taxId + " has no parent");
+                        return new int[0];
+                    }
+                    return new int[]{parent.getInt("id")};
+                }
+            } catch (JSONException e) {
+                logger.warn("Could not read the taxonomy " + taxId + " from Ensembl: " + e.getMessage());
+                return null;
+            } catch (IOException e) {
+                logger.warn("Could not retrieve the taxonomy " + taxId + " from Ensembl: " + e.getMessage());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                if (connection != null) connection.disconnect();
+            }
+        }
+        return null;
+    }
+}
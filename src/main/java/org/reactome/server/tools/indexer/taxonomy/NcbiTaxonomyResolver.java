@@ -0,0 +1,92 @@
+package org.reactome.server.tools.indexer.taxonomy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Resolves lineages from a local copy of the NCBI taxonomy dump (nodes.dmp in taxdump.tar.gz).
+ * <p>
+ * Every node is kept in an int array indexed by taxId holding its parent taxId, so walking a lineage
+ * is a few array reads. The dump is loaded the first time a lineage is requested. Names (names.dmp)
+ * are not needed, the species names come from Reactome.
+ */
+public class NcbiTaxonomyResolver implements TaxonomyResolver {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final int ROOT = 1;
+    private static final int NO_PARENT = 0;
+    private static final int MAX_DEPTH = 256;
+
+    private final File nodes;
+    private int[] parents;
+
+    /**
+     * @param nodes nodes.dmp file, or the directory where the taxonomy dump has been extracted
+     */
+    public NcbiTaxonomyResolver(File nodes) {
+        this.nodes = nodes.isDirectory() ? new File(nodes, "nodes.dmp") : nodes;
+        if (!this.nodes.canRead()) {
+            throw new IllegalArgumentException("Cannot read the NCBI taxonomy nodes in " + this.nodes.getAbsolutePath());
+        }
+    }
+
+    /**
+     * A dump updated in place changes its size or modification time
+     */
+    @Override
+    public String getSource() {
+        return getClass().getSimpleName() + " " + nodes.getAbsolutePath() + " " + nodes.length() + " " + nodes.lastModified();
+    }
+
+    @Override
+    public synchronized int[] getLineage(int taxId) {
+        if (parents == null) parents = loadParents();
+
+        int[] lineage = new int[16];
+        int size = 0;
+        int current = taxId;
+        while (current > 0 && current < parents.length && current != ROOT && size < MAX_DEPTH) {
+            int parent = parents[current];
+            if (parent == NO_PARENT) break;
+            if (size == lineage.length) lineage = Arrays.copyOf(lineage, size * 2);
+            lineage[size++] = parent;
+            current = parent;
+        }
+        return Arrays.copyOf(lineage, size);
+    }
+
+    /**
+     * Lines look like "9606\t|\t9605\t|\tspecies\t|..." (taxId, parent taxId, rank, ...)
+     */
+    private int[] loadParents() {
+        logger.info("Loading the NCBI taxonomy from " + nodes.getAbsolutePath());
+        int[] parents = new int[1 << 22];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(nodes.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int first = line.indexOf('|');
+                int second = line.indexOf('|', first + 1);
+                if (first < 0 || second < 0) continue;
+                int taxId = Integer.parseInt(line.substring(0, first).trim());
+                int parent = Integer.parseInt(line.substring(first + 1, second).trim());
+                if (taxId >= parents.length) {
+                    parents = Arrays.copyOf(parents, Math.max(parents.length * 2, taxId + 1));
+                }
+                parents[taxId] = parent;
+                count++;
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Could not read the NCBI taxonomy nodes in " + nodes.getAbsolutePath(), e);
+        }
+        logger.info("NCBI taxonomy loaded with " + count + " nodes");
+        return parents;
+    }
+}
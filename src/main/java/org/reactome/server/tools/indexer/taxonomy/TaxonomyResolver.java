@@ -0,0 +1,22 @@
+package org.reactome.server.tools.indexer.taxonomy;
+
+/**
+ * Resolves the lineage of a taxon, used to find the Reactome species of interactors whose
+ * taxonomy is not one of the Reactome species (e.g. a strain of a Reactome species).
+ */
+public interface TaxonomyResolver {
+
+    /**
+     * @param taxId NCBI taxonomy identifier
+     * @return ancestors of the taxon, closest first. Empty if the taxon is unknown, null if it could not be resolved
+     * now (e.g. the resource is not reachable) and it is worth trying again later
+     */
+    int[] getLineage(int taxId);
+
+    /**
+     * @return identifies where the lineages come from, lineages cached from another source are not reused
+     */
+    default String getSource() {
+        return getClass().getSimpleName();
+    }
+}
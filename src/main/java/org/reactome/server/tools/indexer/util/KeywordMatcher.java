@@ -0,0 +1,132 @@
+package org.reactome.server.tools.indexer.util;
+
+import java.util.*;
+
+/**
+ * Case insensitive multi-keyword matcher (Aho-Corasick automaton).
+ * <p>
+ * The automaton is built once and finds every keyword contained in a text in a single pass, instead of one
+ * scan per keyword. Transitions are kept in a dense table over the characters present in the keywords, so
+ * matching does not allocate. Keywords are reported in the order they were given, as a substring match of
+ * the lower-cased text would do.
+ */
+public class KeywordMatcher {
+
+    private final List<String> keywords;
+
+    // character -> alphabet index + 1, 0 if no keyword contains the character
+    private final char[] alphabet = new char[Character.MAX_VALUE + 1];
+    private final int alphabetSize;
+
+    // transitions[state * alphabetSize + symbol] -> next state, failure links already followed
+    private final int[] transitions;
+    // keywords ending in each state, including the ones reached through the failure links
+    private final int[][] outputs;
+
+    public KeywordMatcher(List<String> keywords) {
+        this.keywords = Collections.unmodifiableList(new ArrayList<>(keywords));
+
+        int symbols = 0;
+        int maxStates = 1;
+        for (String keyword : this.keywords) {
+            maxStates += keyword.length();
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                if (alphabet[c] == 0) alphabet[c] = (char) ++symbols;
+            }
+        }
+        alphabetSize = Math.max(1, symbols);
+
+        // Trie
+        int[] goTo = new int[maxStates * alphabetSize];
+        Arrays.fill(goTo, -1);
+        List<List<Integer>> ends = new ArrayList<>();
+        ends.add(new ArrayList<>());
+        int states = 1;
+        for (int k = 0; k < this.keywords.size(); k++) {
+            String keyword = this.keywords.get(k);
+            if (keyword.isEmpty()) continue;
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int index = state * alphabetSize + symbol(Character.toLowerCase(keyword.charAt(i)));
+                if (goTo[index] == -1) {
+                    goTo[index] = states++;
+                    ends.add(new ArrayList<>());
+                }
+                state = goTo[index];
+            }
+            ends.get(state).add(k);
+        }
+
+        // Failure links, breadth first, turning the trie into a complete automaton
+        transitions = Arrays.copyOf(goTo, states * alphabetSize);
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < alphabetSize; s++) {
+            if (transitions[s] == -1) {
+                transitions[s] = 0;
+            } else {
+                failure[transitions[s]] = 0;
+                queue.add(transitions[s]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            ends.get(state).addAll(ends.get(failure[state]));
+            for (int s = 0; s < alphabetSize; s++) {
+                int index = state * alphabetSize + s;
+                int next = transitions[index];
+                if (next == -1) {
+                    transitions[index] = transitions[failure[state] * alphabetSize + s];
+                } else {
+                    failure[next] = transitions[failure[state] * alphabetSize + s];
+                    queue.add(next);
+                }
+            }
+        }
+
+        outputs = new int[states][];
+        for (int state = 0; state < states; state++) {
+            outputs[state] = ends.get(state).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Marks in hits the index of every keyword contained in the text. Hits are added to the ones already there,
+     * so several texts (e.g. name, synonyms and summation) can be matched into the same set.
+     */
+    public void match(CharSequence text, BitSet hits) {
+        if (text == null) return;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char symbol = alphabet[Character.toLowerCase(text.charAt(i))];
+            state = symbol == 0 ? 0 : transitions[state * alphabetSize + symbol - 1];
+            for (int keyword : outputs[state]) {
+                hits.set(keyword);
+            }
+        }
+    }
+
+    /**
+     * @return the keywords contained in the texts, in the order of the keywords list
+     */
+    public List<String> find(CharSequence... texts) {
+        BitSet hits = new BitSet(keywords.size());
+        for (CharSequence text : texts) {
+            match(text, hits);
+        }
+        List<String> found = new ArrayList<>(hits.cardinality());
+        for (int k = hits.nextSetBit(0); k >= 0; k = hits.nextSetBit(k + 1)) {
+            found.add(keywords.get(k));
+        }
+        return found;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    private int symbol(char c) {
+        return alphabet[c] - 1;
+    }
+}
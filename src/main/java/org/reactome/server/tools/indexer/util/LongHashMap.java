@@ -0,0 +1,98 @@
+package org.reactome.server.tools.indexer.util;
+
+/**
+ * Open addressing hash map with primitive long keys, avoiding the boxed keys and the entry objects of a
+ * HashMap&lt;Long, V&gt;. Entries cannot be removed and null values are not allowed. Not thread safe: it is
+ * expected to be filled by one thread and then only read.
+ */
+public class LongHashMap<V> {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    public LongHashMap() {
+        this(16);
+    }
+
+    public LongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * @return the previous value of the key, null if there was none
+     */
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException("null values are not allowed");
+        if (size + 1 > keys.length * LOAD_FACTOR) resize(keys.length << 1);
+        int i = indexOf(key, keys, values);
+        @SuppressWarnings("unchecked")
+        V previous = (V) values[i];
+        if (previous == null) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[indexOf(key, keys, values)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Slot of the key, or the empty slot where it would be inserted
+     */
+    private static int indexOf(long key, long[] keys, Object[] values) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void resize(int capacity) {
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] == null) continue;
+            int j = indexOf(keys[i], newKeys, newValues);
+            newKeys[j] = keys[i];
+            newValues[j] = values[i];
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static int mix(long key) {
+        // dbIds are mostly consecutive, spread them over the table (murmur3 finalizer)
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Drops the free slots beyond what the current size needs, once the map will not grow anymore
+     */
+    public void trim() {
+        int capacity = new LongHashMap<>(size).keys.length;
+        if (capacity < keys.length) resize(capacity);
+    }
+
+    @Override
+    public String toString() {
+        return "LongHashMap{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package org.reactome.server.tools.indexer.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Bounded pool of canonical strings, so the values repeated in thousands of documents (species, compartments,
+ * database names, types...) are kept once in memory instead of once per document.
+ * <p>
+ * Every value has a single slot given by its hash. A value found in its slot is replaced by the pooled instance,
+ * otherwise it takes the slot. Frequent values stay in the pool while rare ones keep evicting each other, and the
+ * pool never grows. It is shared by all the workers without locking: the worst a race can do is losing a slot.
+ */
+public class ValuePool {
+
+    // Longer values are rarely repeated and would only pin memory in the pool
+    private static final int MAX_LENGTH = 256;
+
+    private final String[] values;
+    private final int mask;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public ValuePool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        values = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return the pooled instance equal to the value, or the value itself
+     */
+    public String canonical(String value) {
+        if (value == null || value.length() > MAX_LENGTH) return value;
+        int h = value.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        String pooled = values[i];
+        if (value.equals(pooled)) return pooled;
+        values[i] = value;
+        return value;
+    }
+
+    /**
+     * @return a new list with the pooled instances of the values
+     */
+    public List<String> canonical(Collection<String> list) {
+        if (list == null) return null;
+        List<String> rtn = new ArrayList<>(list.size());
+        for (String value : list) {
+            rtn.add(canonical(value));
+        }
+        return rtn;
+    }
+}
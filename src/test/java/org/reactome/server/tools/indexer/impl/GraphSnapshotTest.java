@@ -0,0 +1,140 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes a small snapshot and reads it back
+ */
+public class GraphSnapshotTest {
+
+    private File folder;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("snapshot").toFile();
+        file = new File(folder, "graph.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("name", "ATP");
+        nested.put("synonyms", Arrays.asList("adenosine triphosphate", null));
+        nested.put("identifier", 30616);
+
+        try (GraphSnapshot.Writer writer = GraphSnapshot.writer(file)) {
+            writer.setRelease(64);
+            writer.setLastModified("2018-01-01 00:00:00");
+            writer.add("Pathway", 30L, rows(attributes("Apoptosis", 3, true, null), null));
+            writer.add("Pathway", 10L, rows(attributes("Signaling", 1.5, false, Arrays.asList("a", "b")), null));
+            // No literature row for the first pathways, no attributes but the name for this one
+            Map<String, Object> literature = new LinkedHashMap<>();
+            literature.put("pubMed", new Long[]{1L, 2L});
+            literature.put("entities", Collections.singletonList(nested));
+            Map<String, Object> name = new LinkedHashMap<>();
+            name.put("name", "Disease");
+            writer.add("Pathway", 20L, rows(name, literature));
+            writer.add("SimpleEntity", 5L, rows(attributes("ATP", null, null, Collections.emptyList()), null));
+            writer.finish();
+        }
+        assertEquals(1, folder.listFiles().length);
+
+        try (GraphSnapshot snapshot = GraphSnapshot.open(file)) {
+            assertEquals(Integer.valueOf(64), snapshot.getRelease());
+            assertEquals("2018-01-01 00:00:00", snapshot.getLastModified());
+            assertEquals(Arrays.asList(10L, 20L, 30L), snapshot.getDbIds("Pathway"));
+            assertEquals(Collections.singletonList(5L), snapshot.getDbIds("SimpleEntity"));
+            assertTrue(snapshot.getDbIds("Reaction").isEmpty());
+            assertEquals(3, snapshot.count("Pathway"));
+
+            // Integral numbers are read back as Long
+            assertEquals(attributes("Apoptosis", 3L, true, null), snapshot.getRow("attributes", 30L));
+            assertEquals(attributes("Signaling", 1.5, false, Arrays.asList("a", "b")), snapshot.getRow("attributes", 10L));
+            assertNull(snapshot.getRow("literature", 30L));
+
+            // Missing columns are not in the row, null values are
+            Map<String, Object> row = snapshot.getRow("attributes", 20L);
+            assertEquals(Collections.singletonMap("name", "Disease"), row);
+            row = snapshot.getRow("attributes", 5L);
+            assertTrue(row.containsKey("score"));
+            assertNull(row.get("score"));
+            assertEquals(Collections.emptyList(), row.get("list"));
+
+            Map<String, Object> expected = new LinkedHashMap<>();
+            expected.put("name", "ATP");
+            expected.put("synonyms", Arrays.asList("adenosine triphosphate", null));
+            expected.put("identifier", 30616L);
+            row = snapshot.getRow("literature", 20L);
+            assertEquals(Arrays.asList(1L, 2L), row.get("pubMed"));
+            assertEquals(Collections.singletonList(expected), row.get("entities"));
+
+            assertNull(snapshot.getRow("attributes", 15L));
+            assertNull(snapshot.getRow("references", 10L));
+        }
+    }
+
+    @Test
+    public void duplicateDbId() throws IOException {
+        try (GraphSnapshot.Writer writer = GraphSnapshot.writer(file)) {
+            writer.add("Pathway", 10L, rows(attributes("Apoptosis", 1, true, null), null));
+            writer.add("Pathway", 10L, rows(attributes("Apoptosis", 1, true, null), null));
+            try {
+                writer.finish();
+                fail("A dbId added twice has to be rejected");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        assertFalse(file.exists());
+        assertEquals(0, folder.listFiles().length);
+    }
+
+    @Test
+    public void classesOneAfterTheOther() throws IOException {
+        try (GraphSnapshot.Writer writer = GraphSnapshot.writer(file)) {
+            writer.add("Pathway", 10L, rows(attributes("Apoptosis", 1, true, null), null));
+            writer.add("Reaction", 11L, rows(attributes("Binding", 1, true, null), null));
+            try {
+                writer.add("Pathway", 12L, rows(attributes("Signaling", 1, true, null), null));
+                fail("The rows of a class have to be added one after the other");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static Map<String, Object> attributes(String name, Object score, Boolean flag, List<?> list) {
+        Map<String, Object> rtn = new LinkedHashMap<>();
+        rtn.put("name", name);
+        rtn.put("score", score);
+        rtn.put("flag", flag);
+        rtn.put("list", list);
+        return rtn;
+    }
+
+    private static Map<String, Map<String, Object>> rows(Map<String, Object> attributes, Map<String, Object> literature) {
+        Map<String, Map<String, Object>> rtn = new LinkedHashMap<>();
+        rtn.put("attributes", attributes);
+        rtn.put("literature", literature);
+        return rtn;
+    }
+}
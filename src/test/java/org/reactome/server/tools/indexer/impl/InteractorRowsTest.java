@@ -0,0 +1,156 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactome.server.interactors.database.InteractorsDatabase;
+import org.reactome.server.interactors.model.Interaction;
+import org.reactome.server.interactors.model.Interactor;
+import org.reactome.server.interactors.service.InteractionService;
+import org.reactome.server.interactors.util.InteractorConstant;
+import org.reactome.server.tools.indexer.model.InteractorSummary;
+import org.reactome.server.tools.indexer.model.ReactomeSummary;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads a small interactors database with the single query and through the InteractionService, both have to
+ * give the same interactors and summaries
+ */
+public class InteractorRowsTest {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS INTERACTOR_RESOURCE (ID INTEGER PRIMARY KEY, NAME TEXT, URL TEXT)",
+            "CREATE TABLE IF NOT EXISTS INTERACTION_RESOURCE (ID INTEGER PRIMARY KEY, NAME TEXT, URL TEXT)",
+            "CREATE TABLE IF NOT EXISTS INTERACTOR (ID INTEGER PRIMARY KEY AUTOINCREMENT, ACC TEXT UNIQUE, INTACT_ID TEXT, " +
+                    "INTERACTOR_RESOURCE_ID INTEGER, ALIAS TEXT, TAXID INTEGER, SYNONYMS TEXT, CREATE_DATE TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE TABLE IF NOT EXISTS INTERACTION (ID INTEGER PRIMARY KEY AUTOINCREMENT, INTERACTOR_A INTEGER, INTERACTOR_B INTEGER, " +
+                    "AUTHOR_SCORE REAL, MISCORE REAL, INTERACTION_RESOURCE_ID INTEGER, CREATE_DATE TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE TABLE IF NOT EXISTS INTERACTION_DETAILS (ID INTEGER PRIMARY KEY AUTOINCREMENT, INTERACTION_ID INTEGER, " +
+                    "INTERACTION_AC TEXT, CREATE_DATE TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"
+    };
+
+    // Accessions not in Reactome, the documents
+    private static final Set<String> INTERACTORS = new HashSet<>(Arrays.asList("P00001", "P00002", "CHEBI:100"));
+
+    private File folder;
+    private File database;
+    private final Map<String, ReactomeSummary> reactome = new HashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("interactors").toFile();
+        database = new File(folder, "interactors.db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getAbsolutePath());
+             Statement statement = connection.createStatement()) {
+            for (String table : SCHEMA) statement.executeUpdate(table);
+            statement.executeUpdate("INSERT INTO INTERACTOR_RESOURCE (ID, NAME, URL) VALUES (1, 'UniProt', 'http://www.uniprot.org/'), (2, 'ChEBI', 'http://www.ebi.ac.uk/chebi/')");
+            statement.executeUpdate("INSERT INTO INTERACTION_RESOURCE (ID, NAME, URL) VALUES (1, '" + InteractorConstant.STATIC + "', 'http://www.ebi.ac.uk/intact/'), (2, 'other', 'http://www.example.org/')");
+            statement.executeUpdate("INSERT INTO INTERACTOR (ID, ACC, INTACT_ID, INTERACTOR_RESOURCE_ID, ALIAS, TAXID) VALUES " +
+                    "(1, 'P00001', 'EBI-101', 1, 'ALPHA_HUMAN', 9606), " +
+                    "(2, 'P00002', 'EBI-102', 1, NULL, 10090), " +
+                    "(3, 'Q00001', 'EBI-103', 1, 'BETA_HUMAN', 9606), " +
+                    "(4, 'Q00002', 'EBI-104', 1, 'GAMMA_HUMAN', 9606), " +
+                    "(5, 'CHEBI:100', 'EBI-105', 2, 'water', NULL)");
+            // P00001-Q00001 twice (in both directions), a low score one, a shared evidence, a partner not in
+            // Reactome, a self interaction and an interaction of another resource
+            statement.executeUpdate("INSERT INTO INTERACTION (ID, INTERACTOR_A, INTERACTOR_B, AUTHOR_SCORE, MISCORE, INTERACTION_RESOURCE_ID) VALUES " +
+                    "(1, 1, 3, NULL, 0.6, 1), " +
+                    "(2, 3, 1, NULL, 0.9, 1), " +
+                    "(3, 1, 4, NULL, 0.1, 1), " +
+                    "(4, 2, 4, NULL, 0.8, 1), " +
+                    "(5, 4, 2, NULL, 0.7, 1), " +
+                    "(6, 5, 2, NULL, 0.9, 1), " +
+                    "(7, 1, 1, NULL, 0.9, 1), " +
+                    "(8, 2, 3, NULL, 0.95, 2)");
+            statement.executeUpdate("INSERT INTO INTERACTION_DETAILS (INTERACTION_ID, INTERACTION_AC) VALUES " +
+                    "(1, 'EBI-2'), (1, 'EBI-1'), (2, 'EBI-3'), (3, 'EBI-4'), (4, 'EBI-5'), (5, 'EBI-5'), (6, 'EBI-6'), (7, 'EBI-7'), (8, 'EBI-8')");
+        }
+        reactome.put("Q00001", reactomeSummary("R-HSA-1", "BETA [cytosol]"));
+        reactome.put("Q00002", reactomeSummary("R-HSA-2", "GAMMA [nucleoplasm]"));
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void sameAsInteractionService() throws Exception {
+        InteractorsDatabase interactorsDatabase = new InteractorsDatabase(database.getAbsolutePath());
+        Connection connection = interactorsDatabase.getConnection();
+        assertTrue(InteractorRows.isSupported(connection));
+
+        Map<String, InteractorRows.Row> rows = new LinkedHashMap<>();
+        try (InteractorRows interactorRows = new InteractorRows(connection, InteractorConstant.STATIC, InteractorConstant.MINIMUM_VALID_SCORE, INTERACTORS::contains, reactome::get)) {
+            InteractorRows.Row row;
+            while ((row = interactorRows.next()) != null) {
+                rows.put(row.getInteractor().getAcc(), row);
+            }
+        }
+
+        // The partners found in several interactions get all their evidences and the best score
+        assertEquals(Arrays.asList("P00001", "P00002"), new ArrayList<>(rows.keySet()));
+        InteractorRows.Row row = rows.get("P00001");
+        assertEquals("ALPHA_HUMAN", row.getInteractor().getAlias());
+        assertEquals(Integer.valueOf(9606), row.getInteractor().getTaxid());
+        assertEquals(Collections.singletonList("Q00001 0.9 [EBI-1, EBI-2, EBI-3]"), describe(row.getSummaries()));
+        row = rows.get("P00002");
+        assertNull(row.getInteractor().getAlias());
+        assertEquals(Collections.singletonList("Q00002 0.8 [EBI-5]"), describe(row.getSummaries()));
+
+        InteractionService interactionService = new InteractionService(interactorsDatabase);
+        Map<String, List<Interaction>> interactions = interactionService.getInteractions(INTERACTORS, InteractorConstant.STATIC);
+        Map<String, Set<InteractorSummary>> summaries = new TreeMap<>();
+        for (List<Interaction> accInteractions : interactions.values()) {
+            Set<InteractorSummary> accSummaries = InteractorRows.summarize(accInteractions, reactome::get);
+            if (accSummaries.isEmpty()) continue;
+            Interactor interactor = accInteractions.get(0).getInteractorA();
+            InteractorRows.Row expected = rows.get(interactor.getAcc());
+            assertNotNull(interactor.getAcc(), expected);
+            assertEquals(expected.getInteractor().getAlias(), interactor.getAlias());
+            assertEquals(expected.getInteractor().getTaxid(), interactor.getTaxid());
+            summaries.put(interactor.getAcc(), accSummaries);
+        }
+        assertEquals(rows.keySet(), summaries.keySet());
+        for (Map.Entry<String, Set<InteractorSummary>> entry : summaries.entrySet()) {
+            Set<InteractorSummary> expected = rows.get(entry.getKey()).getSummaries();
+            assertEquals(describe(expected), describe(entry.getValue()));
+            Iterator<InteractorSummary> iterator = entry.getValue().iterator();
+            for (InteractorSummary summary : expected) {
+                assertSame(summary.getReactomeSummary(), iterator.next().getReactomeSummary());
+            }
+        }
+    }
+
+    private static ReactomeSummary reactomeSummary(String id, String name) {
+        ReactomeSummary rtn = new ReactomeSummary();
+        rtn.addId(id);
+        rtn.addName(name);
+        return rtn;
+    }
+
+    /**
+     * @return partner, score and evidences of every summary, in the order they are in the document
+     */
+    private static List<String> describe(Set<InteractorSummary> summaries) {
+        List<String> rtn = new ArrayList<>();
+        for (InteractorSummary summary : summaries) {
+            List<String> evidences = new ArrayList<>(summary.getInteractionEvidences());
+            Collections.sort(evidences);
+            rtn.add(summary.getAccession() + " " + summary.getScore() + " " + evidences);
+        }
+        return rtn;
+    }
+}